@@ -0,0 +1,182 @@
+/*
+ *    class ArchiveDirectory
+ *
+ *    The central directory of an archive written by HArchive.
+ *
+ *    An archive holds its entries one after another, each a complete
+ *    .huf stream with its own header, tree and checksum, followed by
+ *    the directory:
+ *
+ *        32 bits  - MAGIC
+ *        32 bits  - number of entries
+ *        per entry:
+ *        16 bits  - length of the name in bytes
+ *        n bytes  - name, UTF-8
+ *        64 bits  - offset of the entry's .huf stream in the archive
+ *        64 bits  - length of the .huf stream in bytes
+ *        64 bits  - length of the original file
+ *        32 bits  - CRC32C of the original file
+ *
+ *    and a trailer of 16 bytes, so the directory can be found from
+ *    the end of the file:
+ *
+ *        64 bits  - offset of the directory
+ *        32 bits  - length of the directory in bytes
+ *        32 bits  - MAGIC
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+public class ArchiveDirectory
+{
+	public static final int MAGIC = 0x9E484152;   // 0x9E 'H' 'A' 'R'
+	public static final int MAX_NAME = 0xffff;    // Most bytes in a name.
+	private static final int TRAILER = 16;        // Bytes in the trailer.
+
+	/*
+	 *    Entry - one file in the archive.
+	 */
+
+	public static class Entry
+	{
+		public final String name;
+		public final long offset;     // Start of the .huf stream.
+		public final long length;     // Bytes in the .huf stream.
+		public final long size;       // Bytes in the original file.
+		public final int checksum;    // CRC32C of the original file.
+
+		public Entry(String name, long offset, long length, long size, int checksum)
+		{
+			this.name = name;
+			this.offset = offset;
+			this.length = length;
+			this.size = size;
+			this.checksum = checksum;
+		}
+	}
+
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+
+	public void add(Entry e)
+	{
+		entries.add(e);
+	}
+
+	public List<Entry> entries()
+	{
+		return entries;
+	}
+
+	/*
+	 *   find() - the entry of the given name, or null.
+	 */
+
+	public Entry find(String name)
+	{
+		for (Entry e : entries) {
+			if (e.name.equals(name))
+				return e;
+		}
+		return null;
+	}
+
+	/*
+	 *   nameLength() - the number of bytes a name takes in the
+	 *                  directory, which must not be over MAX_NAME.
+	 */
+
+	public static int nameLength(String name)
+	{
+		return name.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/*
+	 *   write() - write the directory and trailer; offset is where
+	 *             they start in the archive.  Throws IOException if
+	 *             a name is too long to store.
+	 */
+
+	public void write(OutputStream os, long offset) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(MAGIC);
+		out.writeInt(entries.size());
+		for (Entry e : entries) {
+			byte[] name = e.name.getBytes(StandardCharsets.UTF_8);
+			if (name.length > MAX_NAME)
+				throw new IOException("name too long: " + e.name);
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeLong(e.offset);
+			out.writeLong(e.length);
+			out.writeLong(e.size);
+			out.writeInt(e.checksum);
+		}
+		int length = bytes.size();
+		out.writeLong(offset);
+		out.writeInt(length);
+		out.writeInt(MAGIC);
+
+		bytes.writeTo(os);
+	}
+
+	/*
+	 *   read() - read the directory of an archive from its end.
+	 *            Throws IOException if the file is not an archive.
+	 */
+
+	public static ArchiveDirectory read(FileChannel ch) throws IOException
+	{
+		long size = ch.size();
+		if (size < TRAILER)
+			throw new IOException("not an archive");
+
+		ByteBuffer trailer = readFully(ch, size - TRAILER, TRAILER);
+		long offset = trailer.getLong();
+		int length = trailer.getInt();
+		if (trailer.getInt() != MAGIC || offset < 0 || length < 8
+				|| offset + length != size - TRAILER)
+			throw new IOException("not an archive");
+
+		ByteBuffer dir = readFully(ch, offset, length);
+		ArchiveDirectory d = new ArchiveDirectory();
+		try {
+			if (dir.getInt() != MAGIC)
+				throw new IOException("bad archive directory");
+			int count = dir.getInt();
+			for (int i = 0; i < count; i++) {
+				byte[] name = new byte[dir.getShort() & 0xffff];
+				dir.get(name);
+				d.add(new Entry(new String(name, StandardCharsets.UTF_8),
+						dir.getLong(), dir.getLong(), dir.getLong(), dir.getInt()));
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("bad archive directory");
+		}
+		return d;
+	}
+
+	/*
+	 *   readFully() - read length bytes at offset, without moving the
+	 *                 channel's position, so threads can share it.
+	 */
+
+	public static ByteBuffer readFully(FileChannel ch, long offset, int length)
+			throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf, offset + buf.position()) == -1)
+				throw new EOFException();
+		}
+		buf.flip();
+		return buf;
+	}
+}
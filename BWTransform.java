@@ -0,0 +1,230 @@
+/*
+ *    class BWTransform
+ *
+ *    The Burrows-Wheeler transform.  The input is cut into blocks
+ *    and each block is replaced by the last column of its sorted
+ *    rotations.  Bytes that occur in the same context end up next
+ *    to each other, which move-to-front and run-length coding can
+ *    then turn into small, repetitive values.
+ *
+ *    The rotations are sorted by building a suffix array of the
+ *    cyclic block with prefix doubling and counting sorts, so a
+ *    block of n bytes costs O(n log n).
+ *
+ *    Output format, per block:
+ *        4 bytes  - index of the original rotation (big endian)
+ *        n bytes  - last column of the sorted rotations
+ *    The block size is 2^param bytes; only the final block may be
+ *    shorter.
+ */
+
+import java.util.*;
+
+public class BWTransform implements Transform
+{
+	public static final int ID = 1;
+
+	private int blockBits;   // log2 of the block size.
+
+	/*
+	 *   Constructor - the argument is log2 of the block size.
+	 */
+
+	public BWTransform(int blockBits)
+	{
+		if (blockBits < 8 || blockBits > 30)
+			throw new IllegalArgumentException("bwt block bits: " + blockBits);
+		this.blockBits = blockBits;
+	}
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return blockBits;
+	}
+
+	public String name()
+	{
+		return "bwt";
+	}
+
+	/*
+	 *   forward() - transform each block in turn.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		int blockSize = 1 << blockBits;
+		int blocks = (data.length + blockSize - 1) / blockSize;
+		byte[] out = new byte[data.length + 4 * blocks];
+		int outPos = 0;
+
+		for (int start = 0; start < data.length; start += blockSize) {
+			int n = Math.min(blockSize, data.length - start);
+			int primary = encodeBlock(data, start, n, out, outPos + 4);
+			putInt(out, outPos, primary);
+			outPos += 4 + n;
+		}
+		return out;
+	}
+
+	/*
+	 *   inverse() - undo the transform block by block.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		int blockSize = 1 << blockBits;
+		int blocks = (data.length + blockSize + 3) / (blockSize + 4);
+		byte[] out = new byte[data.length - 4 * blocks];
+		int inPos = 0;
+		int outPos = 0;
+
+		while (inPos < data.length) {
+			int primary = getInt(data, inPos);
+			int n = Math.min(blockSize, data.length - inPos - 4);
+			decodeBlock(data, inPos + 4, n, primary, out, outPos);
+			inPos += 4 + n;
+			outPos += n;
+		}
+		return out;
+	}
+
+	/*
+	 *   encodeBlock() - write the last column of the sorted rotations
+	 *                   of src[start .. start+n) to dst at dstPos and
+	 *                   return the row holding the original block.
+	 */
+
+	private int encodeBlock(byte[] src, int start, int n,
+			                byte[] dst, int dstPos)
+	{
+		int[] sa = sortRotations(src, start, n);
+		int primary = 0;
+
+		for (int i = 0; i < n; i++) {
+			int p = sa[i];
+			if (p == 0)
+				primary = i;
+			dst[dstPos + i] = src[start + (p == 0 ? n - 1 : p - 1)];
+		}
+		return primary;
+	}
+
+	/*
+	 *   decodeBlock() - rebuild a block from its last column using
+	 *                   the last-to-first mapping.
+	 */
+
+	private void decodeBlock(byte[] src, int start, int n, int primary,
+			                 byte[] dst, int dstPos)
+	{
+		int[] count = new int[257];
+		int[] lf = new int[n];
+
+		for (int i = 0; i < n; i++)
+			count[(src[start + i] & 0xff) + 1]++;
+		for (int c = 0; c < 256; c++)
+			count[c + 1] += count[c];
+		for (int i = 0; i < n; i++)
+			lf[i] = count[src[start + i] & 0xff]++;
+
+		int p = primary;
+		for (int i = n - 1; i >= 0; i--) {
+			dst[dstPos + i] = src[start + p];
+			p = lf[p];
+		}
+	}
+
+	/*
+	 *   sortRotations() - return the start positions of the cyclic
+	 *                     rotations of the block in sorted order.
+	 *
+	 *   Each round sorts the rotations by their first 2k bytes using
+	 *   the classes of the first k bytes computed by the last round.
+	 */
+
+	private static int[] sortRotations(byte[] s, int start, int n)
+	{
+		int[] sa = new int[n];
+		int[] cls = new int[n];
+		int[] tmp = new int[n];
+		int[] cnt = new int[Math.max(256, n)];
+
+		// Round 0 - counting sort on the first byte.
+
+		for (int i = 0; i < n; i++)
+			cnt[s[start + i] & 0xff]++;
+		for (int c = 1; c < 256; c++)
+			cnt[c] += cnt[c - 1];
+		for (int i = n - 1; i >= 0; i--)
+			sa[--cnt[s[start + i] & 0xff]] = i;
+
+		int classes = 1;
+		cls[sa[0]] = 0;
+		for (int i = 1; i < n; i++) {
+			if (s[start + sa[i]] != s[start + sa[i - 1]])
+				classes++;
+			cls[sa[i]] = classes - 1;
+		}
+
+		// Doubling rounds.
+
+		for (int k = 1; k < n && classes < n; k <<= 1) {
+
+			// Sorted by the second half already: shift back by k.
+
+			for (int i = 0; i < n; i++) {
+				tmp[i] = sa[i] - k;
+				if (tmp[i] < 0)
+					tmp[i] += n;
+			}
+
+			// Stable counting sort on the class of the first half.
+
+			Arrays.fill(cnt, 0, classes, 0);
+			for (int i = 0; i < n; i++)
+				cnt[cls[tmp[i]]]++;
+			for (int c = 1; c < classes; c++)
+				cnt[c] += cnt[c - 1];
+			for (int i = n - 1; i >= 0; i--)
+				sa[--cnt[cls[tmp[i]]]] = tmp[i];
+
+			// New classes for the first 2k bytes.
+
+			tmp[sa[0]] = 0;
+			classes = 1;
+			for (int i = 1; i < n; i++) {
+				int a = sa[i];
+				int b = sa[i - 1];
+				int a2 = a + k < n ? a + k : a + k - n;
+				int b2 = b + k < n ? b + k : b + k - n;
+				if (cls[a] != cls[b] || cls[a2] != cls[b2])
+					classes++;
+				tmp[a] = classes - 1;
+			}
+			int[] swap = cls;
+			cls = tmp;
+			tmp = swap;
+		}
+		return sa;
+	}
+
+	private static void putInt(byte[] b, int pos, int v)
+	{
+		b[pos] = (byte) (v >>> 24);
+		b[pos + 1] = (byte) (v >>> 16);
+		b[pos + 2] = (byte) (v >>> 8);
+		b[pos + 3] = (byte) v;
+	}
+
+	private static int getInt(byte[] b, int pos)
+	{
+		return (b[pos] & 0xff) << 24 | (b[pos + 1] & 0xff) << 16
+		     | (b[pos + 2] & 0xff) << 8 | (b[pos + 3] & 0xff);
+	}
+}
@@ -16,24 +16,36 @@ public class BitReader
 	private int count = 8;      // The number of bits collected into a byte.
 	private int curByte = 0;    // The current byte being assembled.
 	private String filename;    // The name of the file to read from.
-	FileInputStream inF = null; // Input file object.
+	private long bits = 0;      // The number of bits read.
+	InputStream inF = null;     // Input file object.
 	
 	/*
 	 *    Constructor for a bit reader.
-	 *    Just open the file.
+	 *    Just open the file, buffered.
 	 */
 	
 	public BitReader(String filename)
 	{
 		try {
 			this.filename = filename;
-		    inF = new FileInputStream(filename);
+		    inF = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
 		}
 		catch (FileNotFoundException e) {
 			System.out.printf("Error opening file %s\n", filename);
 			System.exit(0);
 		}
 	}
+
+	/*
+	 *    Constructor for a bit reader of an open stream.
+	 *    The filename is only used in error messages.
+	 */
+
+	public BitReader(InputStream in, String filename)
+	{
+		this.filename = filename;
+		inF = in;
+	}
 	
 	/*
 	 *    readBit() - return the value of the next bit (0 or 1)
@@ -54,6 +66,7 @@ public class BitReader
 			           // Shift the bit to the rightmost position.
 			           // Mask off everything but this one bit.
 			count++;
+			bits++;
 			return  (curByte >> 8 - count) & 0x0001; 
 		}
 		catch (IOException e) {
@@ -96,8 +109,91 @@ public class BitReader
 		return number;
 		
 	}
+
+	/*
+	 *   readBits() - collect the next n bits (at most 63) into a
+	 *                long, most significant bit first, taking as
+	 *                many as the current byte holds at a time.
+	 *                Returns -1 at end of file.
+	 */
+
+	public long readBits(int n)
+	{
+		long number = 0;
+
+		while (n > 0) {
+			if (count == 8) {           // Out of bits: the next byte.
+				try {
+					curByte = inF.read();
+				}
+				catch (IOException e) {
+					System.out.printf("Error reading byte file: %s\n",filename);
+					System.exit(0);
+				}
+				if (curByte == -1)
+					return -1;
+				count = 0;
+			}
+			int k = Math.min(n, 8 - count);   // Bits left in curByte.
+			count += k;
+			bits += k;
+			n -= k;
+			number = (number << k) | ((curByte >> 8 - count) & ((1 << k) - 1));
+		}
+		return number;
+	}
+
+	/*
+	 *   readGamma() - read a number written by BitWriter.writeGamma().
+	 */
+
+	public long readGamma()
+	{
+		int zeros = 0;
+		int bit;
+
+		while ((bit = readBit()) == 0)
+			zeros++;
+		if (bit == -1 || zeros > 62)
+			return -1;
+		return (1L << zeros) | readBits(zeros);
+	}
 	
 	
+	/*
+	 *   alignToByte() - skip the rest of the byte being unpacked, so
+	 *                   the next bit read is the first of a new byte.
+	 *                   The skipped bits count as read.
+	 */
+
+	public void alignToByte()
+	{
+		bits += 8 - count;
+		count = 8;
+	}
+
+	/*
+	 *   reset() - forget the byte being unpacked, so the reader can
+	 *             start again on a stream that has been reset.
+	 */
+
+	public void reset()
+	{
+		count = 8;
+		curByte = 0;
+		bits = 0;
+	}
+
+	/*
+	 *   getBitCount() - the number of bits read so far.
+	 */
+
+	public long getBitCount()
+	{
+		return bits;
+	}
+
+
 	public void close()
 	{
 		try {
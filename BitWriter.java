@@ -16,25 +16,38 @@ public class BitWriter
 	private int count = 0;        // The number of bits collected into a byte.
 	private int curByte = 0;      // The current byte being assembled.
 	private String filename;      // Name of the output file.
-	FileOutputStream outF = null; // Output file object.
+	private long bits = 0;        // The number of bits written.
+	OutputStream outF = null;     // Output file object.
 	
 	
 	/*
 	 *   The constructor takes the name of the
-	 *   output file as an argument.
+	 *   output file as an argument.  Bytes are
+	 *   buffered before they reach the file.
 	 */
 	
 	public BitWriter(String filename)
 	{
 		try {
 			this.filename = filename;
-		    outF = new FileOutputStream(filename);
+		    outF = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
 		}
 		catch (FileNotFoundException e) {
 			System.out.printf("Error opening file %s\n", filename);
 			System.exit(0);
 		}
 	}
+
+	/*
+	 *   This constructor writes to an open stream.  The
+	 *   filename is only used in error messages.
+	 */
+
+	public BitWriter(OutputStream out, String filename)
+	{
+		this.filename = filename;
+		outF = out;
+	}
 	
 	
 	/*
@@ -48,6 +61,7 @@ public class BitWriter
 		try {
 		    curByte = (curByte << 1) | bit;
 		    count++;
+		    bits++;
 		    if (count == 8) {
 			    outF.write( (byte) curByte);
 			    count = 0;
@@ -72,6 +86,32 @@ public class BitWriter
 			writeBit( (data >> (31 - i)) & 0x00000001 );
 	}
 
+	/*
+	 *   writeBits() - Write the low count bits of data, most
+	 *                 significant bit first.
+	 */
+
+	public void writeBits(long data, int count)
+	{
+		for (int i = count - 1; i >= 0; i--)
+			writeBit( (int) (data >>> i) & 0x0001 );
+	}
+
+	/*
+	 *   writeGamma() - Write a number of 1 or more in Elias gamma
+	 *                  code: as many 0 bits as the number has bits
+	 *                  after its leading 1, then the number itself.
+	 *                  Small numbers take few bits.
+	 */
+
+	public void writeGamma(long data)
+	{
+		int bits = 63 - Long.numberOfLeadingZeros(data);
+		for (int i = 0; i < bits; i++)
+			writeBit(0);
+		writeBits(data, bits + 1);
+	}
+
 	/*
 	 *  writeByte() -  Write the byte to the output file bit by bit.
 	 *                 This will allow (but not require) that the byte
@@ -84,6 +124,39 @@ public class BitWriter
 			writeBit( (data >> (7 - i)) & 0x0001 );
 	}
 	
+	/*
+	 *    alignToByte() - Pad the current byte with zero bits, so the
+	 *                    next bit written starts a new byte.
+	 */
+
+	public void alignToByte()
+	{
+		while (count != 0)
+			writeBit(0);
+	}
+
+	/*
+	 *    getBitCount() - The number of bits written so far,
+	 *                    not counting the padding added by close().
+	 */
+
+	public long getBitCount()
+	{
+		return bits;
+	}
+
+	/*
+	 *    reset() - Forget any bits collected so far, so the writer
+	 *              can start again on a stream that has been reset.
+	 */
+
+	public void reset()
+	{
+		count = 0;
+		curByte = 0;
+		bits = 0;
+	}
+
 	/*
 	 *    close() - Close the outputfile.  Before closing
 	 *              the file, pad the final byte with
@@ -0,0 +1,140 @@
+/*
+ *    class BlockSplitter
+ *
+ *    Chooses where to cut a file into blocks, each coded as its own
+ *    segment with its own tree (HEncode -b).
+ *
+ *    A new tree pays off where the statistics of the bytes change,
+ *    but each costs a header, a tree and a footer entry.  The input
+ *    is cut into chunks of CHUNK bytes, and the histogram of each
+ *    chunk, and the exact size of the chunk coded on its own (the
+ *    sum of freq * code length over a tree built from it, plus the
+ *    tree and segment overhead), are worked out in parallel by tasks
+ *    on the common fork/join pool.
+ *
+ *    Then, in one pass from the front, each chunk is added to the
+ *    block before it if coding them together, with one tree, costs
+ *    no more than coding them apart; otherwise it starts a new block.
+ *    The pass builds one tree per chunk, so the whole is linear in
+ *    the size of the input.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BlockSplitter
+{
+	public static final int CHUNK = 1 << 14;     // Bytes per chunk, the
+	                                             //    smallest block.
+
+	// Bits each segment costs besides its tree and codes: a header
+	// with a checksum, the padding of its last byte (4 on average)
+	// and its entry in the footer.
+
+	private static final int SEGMENT_BITS = 104 + 4 + 128;
+
+	private static final int TASK_CHUNKS = 16;   // Chunks per task.
+
+	/*
+	 *   split() - the ends of the blocks of len bytes of data, in
+	 *             order; the last is len.
+	 */
+
+	public static int[] split(byte[] data, int len)
+	{
+		int chunks = (len + CHUNK - 1) / CHUNK;
+		if (chunks <= 1)
+			return new int[] { len };
+
+		int[][] hist = new int[chunks][256];
+		long[] alone = new long[chunks];   // Bits of each chunk coded alone.
+		ForkJoinPool.commonPool().invoke(new ChunkTask(data, len, hist, alone, 0, chunks));
+
+		int[] ends = new int[chunks];
+		int blocks = 0;
+		HuffmanTree tree = new HuffmanTree(256);
+		int[] block = hist[0].clone();      // Histogram of the current block,
+		long blockBits = alone[0];          //    and its size coded alone.
+		int[] merged = new int[256];
+
+		for (int c = 1; c < chunks; c++) {
+			for (int b = 0; b < 256; b++)
+				merged[b] = block[b] + hist[c][b];
+			long mergedBits = cost(tree, merged);
+			if (mergedBits <= blockBits + alone[c]) {
+				int[] t = block;
+				block = merged;
+				merged = t;
+				blockBits = mergedBits;
+			}
+			else {
+				ends[blocks++] = c * CHUNK;
+				System.arraycopy(hist[c], 0, block, 0, 256);
+				blockBits = alone[c];
+			}
+		}
+		ends[blocks++] = len;
+		return Arrays.copyOf(ends, blocks);
+	}
+
+	/*
+	 *   cost() - the bits of a segment coding bytes of the given
+	 *            frequencies with a tree built from them.
+	 */
+
+	public static long cost(HuffmanTree tree, int[] freq)
+	{
+		tree.build(freq);
+		tree.makeCodes();
+		long bits = SEGMENT_BITS + tree.treeBits();
+		for (int b = 0; b < 256; b++)
+			bits += (long) freq[b] * tree.length(b);
+		return bits;
+	}
+
+	/*
+	 *    ChunkTask - count chunks start to end and cost each alone,
+	 *                splitting in two while the range is large.
+	 */
+
+	private static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private byte[] data;
+		private int len;
+		private int[][] hist;
+		private long[] alone;
+		private int start;
+		private int end;
+
+		ChunkTask(byte[] data, int len, int[][] hist, long[] alone, int start, int end)
+		{
+			this.data = data;
+			this.len = len;
+			this.hist = hist;
+			this.alone = alone;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute()
+		{
+			if (end - start > TASK_CHUNKS) {
+				int mid = start + (end - start) / 2;
+				invokeAll(new ChunkTask(data, len, hist, alone, start, mid),
+						new ChunkTask(data, len, hist, alone, mid, end));
+				return;
+			}
+
+			HuffmanTree tree = new HuffmanTree(256);
+			for (int c = start; c < end; c++) {
+				int[] h = hist[c];
+				int stop = Math.min(len, (c + 1) * CHUNK);
+				for (int i = c * CHUNK; i < stop; i++)
+					h[data[i] & 0xff]++;
+				alone[c] = cost(tree, h);
+			}
+		}
+	}
+}
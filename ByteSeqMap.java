@@ -0,0 +1,150 @@
+/*
+ *    class ByteSeqMap
+ *
+ *    A hash map from byte sequences to ints, built from primitive
+ *    arrays.  The keys are not copied: each key is a range of one
+ *    byte array given to the constructor, held as an offset and a
+ *    length.  Open addressing with linear probing; the table grows
+ *    when it is half full.
+ *
+ *    Entries are numbered from 0 in order of insertion and keep
+ *    their numbers as the map grows.
+ */
+
+import java.util.*;
+
+public class ByteSeqMap
+{
+	private byte[] data;     // The bytes the keys are ranges of.
+	private int[] table;     // Entry number + 1 in each slot, 0 if empty.
+	private int[] off;       // Offset of each entry's key.
+	private int[] len;       // Length of each entry's key.
+	private int[] hash;      // Hash of each entry's key.
+	private int[] value;     // Value of each entry.
+	private int size = 0;    // Number of entries.
+
+	public ByteSeqMap(byte[] data, int capacity)
+	{
+		this.data = data;
+		int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+		table = new int[slots];
+		off = new int[capacity];
+		len = new int[capacity];
+		hash = new int[capacity];
+		value = new int[capacity];
+	}
+
+	/*
+	 *   find() - the entry of the key data[o .. o+n), or -1.
+	 */
+
+	public int find(int o, int n)
+	{
+		int h = hash(o, n);
+		int mask = table.length - 1;
+
+		for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+			int e = table[i] - 1;
+			if (hash[e] == h && equal(e, o, n))
+				return e;
+		}
+		return -1;
+	}
+
+	/*
+	 *   add() - the entry of the key data[o .. o+n), adding it with
+	 *           value 0 if it is not in the map.
+	 */
+
+	public int add(int o, int n)
+	{
+		int h = hash(o, n);
+		int mask = table.length - 1;
+		int i = h & mask;
+
+		for (; table[i] != 0; i = (i + 1) & mask) {
+			int e = table[i] - 1;
+			if (hash[e] == h && equal(e, o, n))
+				return e;
+		}
+
+		if (size == off.length) {
+			int cap = off.length * 2;
+			off = Arrays.copyOf(off, cap);
+			len = Arrays.copyOf(len, cap);
+			hash = Arrays.copyOf(hash, cap);
+			value = Arrays.copyOf(value, cap);
+		}
+		int e = size++;
+		off[e] = o;
+		len[e] = n;
+		hash[e] = h;
+		value[e] = 0;
+		table[i] = e + 1;
+
+		if (2 * size > table.length)
+			rehash();
+		return e;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int value(int e)
+	{
+		return value[e];
+	}
+
+	public void setValue(int e, int v)
+	{
+		value[e] = v;
+	}
+
+	public void increment(int e)
+	{
+		value[e]++;
+	}
+
+	public int offset(int e)
+	{
+		return off[e];
+	}
+
+	public int length(int e)
+	{
+		return len[e];
+	}
+
+	/*
+	 *   hash() - FNV-1a hash of the key bytes.
+	 */
+
+	private int hash(int o, int n)
+	{
+		int h = 0x811c9dc5;
+		for (int i = o; i < o + n; i++) {
+			h ^= data[i] & 0xff;
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private boolean equal(int e, int o, int n)
+	{
+		return len[e] == n && Arrays.equals(data, off[e], off[e] + n, data, o, o + n);
+	}
+
+	private void rehash()
+	{
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int e = 0; e < size; e++) {
+			int i = hash[e] & mask;
+			while (table[i] != 0)
+				i = (i + 1) & mask;
+			table[i] = e + 1;
+		}
+	}
+}
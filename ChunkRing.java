@@ -0,0 +1,161 @@
+/*
+ *    class ChunkRing
+ *
+ *    A bounded ring of reusable byte buffers ("chunks") passed
+ *    between two threads.  The producer takes an empty chunk, fills
+ *    it and hands it on; the consumer takes the full chunk, drains
+ *    it and gives it back.  All chunks are allocated when the ring
+ *    is made, so nothing is allocated while data is flowing.
+ *
+ *    A chunk with length END marks the end of the data.
+ *
+ *    The ring records how full it was each time a chunk was handed
+ *    on, and how often each side had to wait for the other, so the
+ *    balance between the I/O threads and the coder can be seen.
+ */
+
+import java.util.concurrent.*;
+
+public class ChunkRing
+{
+	public static final int END = -1;   // Length of the end marker.
+
+	public static final int DEFAULT_CHUNKS = 8;           // Chunks in a ring,
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 18; //    of 256 KiB each.
+
+	/*
+	 *    Chunk - a buffer and the number of bytes in it.
+	 */
+
+	public static class Chunk
+	{
+		public byte[] data;
+		public int length;
+
+		Chunk(int size)
+		{
+			data = new byte[size];
+			length = 0;
+		}
+	}
+
+	private String name;              // Shown in the stats.
+	private int capacity;             // Number of chunks.
+	private ArrayBlockingQueue<Chunk> free;
+	private ArrayBlockingQueue<Chunk> full;
+
+	private volatile long handoffs = 0;        // Chunks handed on.
+	private volatile long depthTotal = 0;      // Sum of depths seen.
+	private volatile int maxDepth = 0;         // Deepest queue seen.
+	private volatile long producerWaits = 0;   // Times no chunk was free.
+	private volatile long consumerWaits = 0;   // Times no chunk was full.
+
+	/*
+	 *   Constructor - make a ring of capacity chunks of chunkSize bytes.
+	 */
+
+	public ChunkRing(String name, int capacity, int chunkSize)
+	{
+		this.name = name;
+		this.capacity = capacity;
+		free = new ArrayBlockingQueue<Chunk>(capacity);
+		full = new ArrayBlockingQueue<Chunk>(capacity);
+		for (int i = 0; i < capacity; i++)
+			free.add(new Chunk(chunkSize));
+	}
+
+	/*
+	 *   takeFree() - producer side: wait for an empty chunk.
+	 */
+
+	public Chunk takeFree() throws InterruptedException
+	{
+		Chunk c = free.poll();
+		if (c == null) {
+			producerWaits++;
+			c = free.take();
+		}
+		c.length = 0;
+		return c;
+	}
+
+	/*
+	 *   putFull() - producer side: hand on a filled chunk.
+	 */
+
+	public void putFull(Chunk c) throws InterruptedException
+	{
+		full.put(c);
+		int depth = full.size();
+		handoffs++;
+		depthTotal += depth;
+		if (depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	/*
+	 *   takeFull() - consumer side: wait for a filled chunk.
+	 */
+
+	public Chunk takeFull() throws InterruptedException
+	{
+		Chunk c = full.poll();
+		if (c == null) {
+			consumerWaits++;
+			c = full.take();
+		}
+		return c;
+	}
+
+	/*
+	 *   putFree() - consumer side: give back a drained chunk.
+	 */
+
+	public void putFree(Chunk c)
+	{
+		free.offer(c);
+	}
+
+	public int depth()
+	{
+		return full.size();
+	}
+
+	public Stats stats()
+	{
+		return new Stats(this);
+	}
+
+	/*
+	 *    Stats - a copy of the queue depth figures of a ring.
+	 */
+
+	public static class Stats
+	{
+		public final String name;
+		public final int capacity;
+		public final long handoffs;
+		public final int maxDepth;
+		public final double averageDepth;
+		public final long producerWaits;   // Producer faster than consumer.
+		public final long consumerWaits;   // Consumer faster than producer.
+
+		private Stats(ChunkRing r)
+		{
+			name = r.name;
+			capacity = r.capacity;
+			handoffs = r.handoffs;
+			maxDepth = r.maxDepth;
+			averageDepth = handoffs == 0 ? 0.0 : (double) r.depthTotal / handoffs;
+			producerWaits = r.producerWaits;
+			consumerWaits = r.consumerWaits;
+		}
+
+		public String toString()
+		{
+			return String.format("%s queue: chunks %d  handoffs %d  depth avg %.2f max %d"
+					+ "  producer waits %d  consumer waits %d", name, capacity,
+					handoffs, averageDepth, maxDepth, producerWaits, consumerWaits);
+		}
+	}
+}
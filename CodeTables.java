@@ -0,0 +1,229 @@
+/*
+ *    class CodeTables
+ *
+ *    Several code tables for one segment of bytes, switched every
+ *    few symbols, as bzip2 does.
+ *
+ *    The bytes are cut into groups of groupSize symbols and each
+ *    group is coded with whichever of the tables codes it in the
+ *    fewest bits.  The tables start out each favouring a different
+ *    range of byte values, then are refined a few times: every group
+ *    is given to its cheapest table, and each table is rebuilt from
+ *    the bytes of its groups.  So input whose statistics shift (text
+ *    headers then binary data, say) gets a table for each kind.
+ *
+ *    Written after the header:
+ *
+ *        per table  - the code lengths (HuffmanTree.writeLengths())
+ *        per group  - the table used, move-to-front coded and
+ *                     written in unary (n ones then a zero)
+ *
+ *    Every byte used in the segment has a code in every table, and
+ *    no code is longer than MAX_LENGTH bits.
+ */
+
+import java.util.*;
+
+public class CodeTables
+{
+	public static final int MIN_TABLES = 2;
+	public static final int MAX_TABLES = 6;
+	public static final int GROUP_SIZE = 50;    // Symbols per group.
+	public static final int MAX_LENGTH = 20;    // Longest code, in bits.
+
+	private static final int ITERATIONS = 4;    // Rounds of refinement.
+	private static final int START_COST = 15;  // Bits charged at first
+	                                            //    for bytes outside a
+	                                            //    table's range.
+
+	private HuffmanTree[] trees;
+	private int groupSize;
+	private int[] selectors;       // Table of each group.
+
+	private CodeTables(int tables, int groupSize, int groups)
+	{
+		trees = new HuffmanTree[tables];
+		for (int t = 0; t < tables; t++)
+			trees[t] = new HuffmanTree(256);
+		this.groupSize = groupSize;
+		selectors = new int[groups];
+	}
+
+	/*
+	 *   build() - choose the tables and the table of each group for
+	 *             len bytes of data.
+	 */
+
+	public static CodeTables build(byte[] data, int len, int tables, int groupSize)
+	{
+		int groups = (int) (((long) len + groupSize - 1) / groupSize);
+		CodeTables ct = new CodeTables(tables, groupSize, groups);
+
+		long[] freq = new long[256];
+		for (int i = 0; i < len; i++)
+			freq[data[i] & 0xff]++;
+
+		// To start, table t codes a range of byte values holding about
+		// 1/tables of the input cheaply and all others dearly.
+
+		int[][] cost = new int[tables][256];
+		long remaining = len;
+		int s = 0;
+		for (int t = 0; t < tables; t++) {
+			long target = remaining / (tables - t);
+			long sum = 0;
+			int lo = s;
+			while (s < 256 && (sum < target || t == tables - 1))
+				sum += freq[s++];
+			remaining -= sum;
+			for (int b = 0; b < 256; b++)
+				cost[t][b] = b >= lo && b < s ? 0 : START_COST;
+		}
+
+		long[][] tableFreq = new long[tables][256];
+		for (int iter = 0; iter < ITERATIONS; iter++) {
+			for (int t = 0; t < tables; t++)
+				Arrays.fill(tableFreq[t], 0);
+
+			for (int g = 0; g < groups; g++) {
+				int start = g * groupSize;
+				int end = Math.min(start + groupSize, len);
+				int best = 0;
+				long bestBits = Long.MAX_VALUE;
+				for (int t = 0; t < tables; t++) {
+					long bits = 0;
+					for (int i = start; i < end; i++)
+						bits += cost[t][data[i] & 0xff];
+					if (bits < bestBits) {
+						bestBits = bits;
+						best = t;
+					}
+				}
+				ct.selectors[g] = best;
+				for (int i = start; i < end; i++)
+					tableFreq[best][data[i] & 0xff]++;
+			}
+
+			// Rebuild each table from its groups.  Adding 1 for every
+			// byte used anywhere gives each a code in every table.
+
+			for (int t = 0; t < tables; t++) {
+				for (int b = 0; b < 256; b++) {
+					if (freq[b] > 0)
+						tableFreq[t][b]++;
+				}
+				ct.trees[t].buildLimited(tableFreq[t], MAX_LENGTH);
+				for (int b = 0; b < 256; b++)
+					cost[t][b] = ct.trees[t].length(b);
+			}
+		}
+
+		for (int t = 0; t < tables; t++)
+			ct.trees[t].canonicalize();
+		return ct;
+	}
+
+	/*
+	 *   write() - write the tables and the table of each group.
+	 */
+
+	public void write(BitWriter bitw)
+	{
+		for (HuffmanTree t : trees)
+			t.writeLengths(bitw);
+
+		int[] mtf = new int[trees.length];
+		for (int t = 0; t < mtf.length; t++)
+			mtf[t] = t;
+		for (int sel : selectors) {
+			int j = 0;
+			while (mtf[j] != sel)
+				j++;
+			for (int k = 0; k < j; k++)
+				bitw.writeBit(1);
+			bitw.writeBit(0);
+			for (; j > 0; j--)
+				mtf[j] = mtf[j - 1];
+			mtf[0] = sel;
+		}
+	}
+
+	/*
+	 *   read() - read the tables and the table of each group of a
+	 *            segment of symbolCount symbols.
+	 */
+
+	public static CodeTables read(BitReader bitr, int tables, int groupSize,
+			int symbolCount)
+	{
+		if (tables < MIN_TABLES || tables > MAX_TABLES || groupSize < 1 || symbolCount < 0)
+			throw new IllegalStateException("Bad code table header");
+		int groups = (int) (((long) symbolCount + groupSize - 1) / groupSize);
+		CodeTables ct = new CodeTables(tables, groupSize, groups);
+
+		for (HuffmanTree t : ct.trees)
+			t.readLengths(bitr);
+
+		int[] mtf = new int[tables];
+		for (int t = 0; t < tables; t++)
+			mtf[t] = t;
+		for (int g = 0; g < groups; g++) {
+			int j = 0;
+			int bit;
+			while ((bit = bitr.readBit()) == 1) {
+				if (++j == tables)
+					throw new IllegalStateException("Bad table selector");
+			}
+			if (bit == -1)
+				throw new IllegalStateException("Truncated table selectors");
+			int sel = mtf[j];
+			for (; j > 0; j--)
+				mtf[j] = mtf[j - 1];
+			mtf[0] = sel;
+			ct.selectors[g] = sel;
+		}
+		return ct;
+	}
+
+	/*
+	 *   encode() - write the codes of len bytes of data, switching
+	 *              table at each group.
+	 */
+
+	public void encode(BitWriter bitw, byte[] data, int len)
+	{
+		for (int g = 0; g < selectors.length; g++) {
+			HuffmanTree t = trees[selectors[g]];
+			int end = Math.min((g + 1) * groupSize, len);
+			for (int i = g * groupSize; i < end; i++) {
+				int b = data[i] & 0xff;
+				bitw.writeBits(t.code(b), t.length(b));
+			}
+		}
+	}
+
+	/*
+	 *   tree() - the table of group g; symbol i is in group
+	 *            i / groupSize().
+	 */
+
+	public HuffmanTree tree(int g)
+	{
+		return trees[selectors[g]];
+	}
+
+	public int groupSize()
+	{
+		return groupSize;
+	}
+
+	public int tables()
+	{
+		return trees.length;
+	}
+
+	public int groups()
+	{
+		return selectors.length;
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ *    class CodecEngine
+ *
+ *    A reusable Huffman encoder/decoder for data held in memory.
+ *
+ *    HEncode and HDecode are built for one file each.  An engine
+ *    instead owns its histogram, code tree, checksum, header and
+ *    I/O buffers, and reuses them for every call, so after the first
+ *    few calls (while its output buffer grows to the largest size
+ *    needed) encoding and decoding allocate nothing.
+ *
+ *    The output of encode() is a complete .huf file (extended header
+ *    with a CRC32C, tree and payload) and decode() reads any .huf
+ *    file, one segment or several, so the engine and the command
+ *    line tools interoperate.  Files written with transforms, a symbol alphabet,
+ *    several code tables, byte planes or tANS can be decoded, but undoing the
+ *    transforms or reading the other code tables allocates.
+ *
+ *    An engine is not thread safe.  forThread() hands each thread
+ *    its own engine, kept for the life of the thread.
+ */
+
+import java.util.*;
+import java.util.zip.*;
+
+public class CodecEngine
+{
+	private static final ThreadLocal<CodecEngine> POOL =
+			ThreadLocal.withInitial(CodecEngine::new);
+
+	private int[] freq = new int[256];          // Histogram of the input.
+	private HuffmanTree tree = new HuffmanTree(256);
+	private CRC32C crc = new CRC32C();
+	private HufHeader header = new HufHeader();
+	private byte[] symbolBytes = new byte[256];   // Bytes of one expanded
+	                                              //    alphabet symbol.
+
+	private ReusableOutputStream out = new ReusableOutputStream(1 << 16);
+	private ReusableInputStream in = new ReusableInputStream();
+	private BitWriter bitw = new BitWriter(out, "<engine>");
+	private BitReader bitr = new BitReader(in, "<engine>");
+
+	/*
+	 *   forThread() - the engine of the calling thread, reset.
+	 */
+
+	public static CodecEngine forThread()
+	{
+		CodecEngine engine = POOL.get();
+		engine.reset();
+		return engine;
+	}
+
+	/*
+	 *   reset() - clear all state left by the last call.  encode()
+	 *             and decode() reset the engine themselves.
+	 */
+
+	public void reset()
+	{
+		for (int i = 0; i < 256; i++)
+			freq[i] = 0;
+		tree.reset();
+		crc.reset();
+		out.reset();
+		bitw.reset();
+		bitr.reset();
+	}
+
+	/*
+	 *   encode() - encode len bytes of src starting at off.  Returns
+	 *              the length of the .huf data, which is held in
+	 *              output() until the next call.
+	 */
+
+	public int encode(byte[] src, int off, int len)
+	{
+		reset();
+
+		for (int i = off; i < off + len; i++)
+			freq[src[i] & 0xff]++;
+		crc.update(src, off, len);
+
+		tree.build(freq);
+		tree.makeCodes();
+
+		header.flags = 0;
+		header.setChecksum((int) crc.getValue());
+		header.symbolCount = len;
+		out.ensureCapacity(len / 2 + 1024);
+		header.write(bitw);
+		tree.write(bitw);
+
+		for (int i = off; i < off + len; i++) {
+			int b = src[i] & 0xff;
+			bitw.writeBits(tree.code(b), tree.length(b));
+		}
+		bitw.close();     // Pads the last byte; the stream stays open.
+		return out.size();
+	}
+
+	/*
+	 *   decode() - decode the .huf data in len bytes of src starting
+	 *              at off.  Returns the length of the decoded data,
+	 *              which is held in output() until the next call.
+	 *
+	 *              The segments of a file written by HEncode -a or -b
+	 *              are decoded in turn, up to the footer.
+	 */
+
+	public int decode(byte[] src, int off, int len) throws DataFormatException
+	{
+		reset();
+		in.reset(src, off, len);
+
+		int segments = 0;
+		boolean checked = true;     // Every segment has a checksum.
+		long first = bitr.readBits(32);
+		while (first != -1 && (int) first != SegmentIndex.FOOTER_MAGIC) {
+			checked &= decodeSegment((int) first);
+			segments++;
+			bitr.alignToByte();         // Each segment ends on a byte.
+			first = bitr.readBits(32);
+		}
+		if (segments == 0)
+			throw new DataFormatException("Truncated: no header");
+
+		// checksum() covers the whole output.
+		if (!checked)
+			crc.reset();
+		else if (segments > 1) {
+			crc.reset();
+			crc.update(out.buffer(), 0, out.size());
+		}
+		return out.size();
+	}
+
+	/*
+	 *   decodeSegment() - decode one segment, whose first 32 bits have
+	 *                     been read, onto the end of the output.
+	 *                     Returns whether it had a checksum.
+	 */
+
+	private boolean decodeSegment(int first) throws DataFormatException
+	{
+		int start = out.size();
+		HuffmanTree t = tree;
+		SymbolAlphabet alphabet;
+		CodeTables tables = null;
+		TansCoder tans = null;
+		try {
+			header.readFrom(bitr, first);
+			alphabet = header.alphabet;
+			if (alphabet != null) {        // Canonical code lengths.
+				t = new HuffmanTree(alphabet.size());
+				t.readLengths(bitr);
+			}
+			else if (header.hasTables())   // A table per group.
+				tables = CodeTables.read(bitr, header.tables,
+						header.groupSize, header.symbolCount);
+			else if (header.hasTans())     // tANS counts.
+				tans = TansCoder.read(bitr, header.tableLog);
+			else if (!header.hasPlanes())  // Plane trees come later.
+				tree.read(bitr);
+		}
+		catch (RuntimeException e) {
+			throw new DataFormatException("Bad header or code tree: " + e.getMessage());
+		}
+
+		int count = header.symbolCount;
+		if (count < 0 || count > Integer.MAX_VALUE - start)
+			throw new DataFormatException("Bad symbol count: " + count);
+		out.ensureCapacity(start + count);
+
+		if (tans != null && count > 0) {
+			tans.start(bitr);
+			for (int i = 0; i < count; i++) {
+				int b = tans.next(bitr);
+				if (b == -1)
+					throw new DataFormatException(
+							"Truncated: " + i + " of " + count + " symbols decoded");
+				out.write(b);
+			}
+			count = 0;         // Nothing left for the tree.
+		}
+
+		int root = t.root();
+		int plane = 0;
+		int planeEnd = 0;
+		for (int i = 0; i < count; i++) {
+			if (tables != null && i % tables.groupSize() == 0) {
+				t = tables.tree(i / tables.groupSize());
+				root = t.root();
+			}
+			if (header.hasPlanes() && i == planeEnd) {
+				while (header.planeSize(plane) == 0)
+					plane++;
+				planeEnd += header.planeSize(plane++);
+				try {
+					tree.read(bitr);
+				}
+				catch (RuntimeException e) {
+					throw new DataFormatException("Bad code tree: " + e.getMessage());
+				}
+				root = t.root();
+			}
+			int n = root;
+			do {
+				int bit = bitr.readBit();
+				if (bit == -1)
+					throw new DataFormatException(
+							"Truncated: " + i + " of " + count + " symbols decoded");
+				n = bit == 0 ? t.left(n) : t.right(n);
+			} while (!t.isLeaf(n));
+			if (alphabet == null)
+				out.write(t.symbol(n));
+			else
+				out.write(symbolBytes, 0, alphabet.expand(t.symbol(n), symbolBytes, 0));
+		}
+		if (alphabet != null)
+			out.write(symbolBytes, 0, alphabet.finish(symbolBytes, 0));
+
+		if (!header.transforms.isEmpty()) {
+			byte[] original = header.transforms.inverse(
+					Arrays.copyOfRange(out.buffer(), start, out.size()));
+			out.truncate(start);
+			out.write(original, 0, original.length);
+		}
+
+		if (!header.hasChecksum())
+			return false;
+		crc.reset();
+		crc.update(out.buffer(), start, out.size() - start);
+		if ((int) crc.getValue() != header.checksum)
+			throw new DataFormatException("Checksum mismatch");
+		return true;
+	}
+
+	/*
+	 *   output() - the result of the last encode() or decode().  The
+	 *              array belongs to the engine and may be longer
+	 *              than the result.
+	 */
+
+	public byte[] output()
+	{
+		return out.buffer();
+	}
+
+	public int outputLength()
+	{
+		return out.size();
+	}
+
+	/*
+	 *   checksum() - the CRC32C of the uncompressed data of the last
+	 *                encode() or decode(); 0 after decoding a file
+	 *                with no checksum.
+	 */
+
+	public int checksum()
+	{
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ *    class CodecEvent
+ *
+ *    A JDK Flight Recorder event summarising a whole encode or
+ *    decode run.  Recorded by CodecMetrics.finish().
+ */
+
+import jdk.jfr.*;
+
+@Name("huffman.Codec")
+@Label("Huffman Codec Run")
+@Category("Huffman")
+@Description("Totals for one Huffman encode or decode run")
+public class CodecEvent extends Event
+{
+	@Label("Operation")
+	public String operation;
+
+	@Label("File")
+	public String file;
+
+	@Label("Bytes In")
+	@DataAmount
+	public long bytesIn;
+
+	@Label("Bytes Out")
+	@DataAmount
+	public long bytesOut;
+
+	@Label("Symbols")
+	public long symbols;
+
+	@Label("Bits Per Symbol")
+	public double bitsPerSymbol;
+
+	@Label("Entropy Gap")
+	@Description("Bits per symbol above the order-0 entropy")
+	public double entropyGap;
+
+	@Label("Throughput")
+	@DataAmount(DataAmount.BYTES)
+	@Frequency
+	public long bytesPerSecond;
+}
@@ -0,0 +1,233 @@
+/*
+ *    class CodecMetrics
+ *
+ *    Timings and counters for one encode or decode run.
+ *
+ *    The coder calls begin() and end() around each phase; each phase
+ *    is timed and also recorded as a PhaseEvent for JDK Flight
+ *    Recorder.  Byte, bit and symbol counts are filled in as the run
+ *    goes, and finish() records a CodecEvent with the totals.
+ *
+ *    snapshot() returns an immutable copy of the numbers so callers
+ *    can inspect a run without a profiler or a JFR recording.
+ */
+
+import java.util.*;
+
+public class CodecMetrics
+{
+	/*
+	 *    Phase - the timed phases of a run.
+	 */
+
+	public enum Phase
+	{
+		TRANSFORM,    // Pre-transforms (encode) or their inverse (decode).
+		FREQUENCY,    // Counting the byte frequencies.
+		TREE,         // Building the code tree.
+		HEADER,       // Writing or reading the header and tree.
+		ENCODE,       // Coding the payload.
+		DECODE        // Decoding the payload.
+	}
+
+	private String operation;     // "encode" or "decode".
+	private String file;          // The file being processed.
+
+	private long[] phaseNanos = new long[Phase.values().length];
+	private long started;         // nanoTime() of the current phase.
+	private PhaseEvent event;     // JFR event of the current phase.
+	private long runStart = 0;    // nanoTime() of the first begin().
+	private long runNanos = 0;    // Total time of the run.
+
+	private long bytesIn = 0;     // Bytes read.
+	private long bytesOut = 0;    // Bytes written.
+	private long symbols = 0;     // Symbols coded.
+	private long payloadBits = 0; // Bits of coded symbols.
+	private double entropy = 0.0; // Order-0 entropy, bits per symbol.
+
+	private ArrayList<ChunkRing.Stats> queues = new ArrayList<ChunkRing.Stats>();
+	                              // Queue depths of pipelined I/O.
+
+	public CodecMetrics(String operation, String file)
+	{
+		this.operation = operation;
+		this.file = file;
+	}
+
+	/*
+	 *   begin() - start timing a phase.
+	 */
+
+	public void begin(Phase phase)
+	{
+		event = new PhaseEvent();
+		event.begin();
+		started = System.nanoTime();
+		if (runStart == 0)
+			runStart = started;
+	}
+
+	/*
+	 *   end() - stop timing a phase, adding its time to the total for
+	 *           the phase and recording its JFR event.  bytes is the
+	 *           amount of data the phase handled, or 0.
+	 */
+
+	public void end(Phase phase, long bytes)
+	{
+		long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - started;
+		runNanos = now - runStart;
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.operation = operation;
+			event.phase = phase.name().toLowerCase();
+			event.bytes = bytes;
+			event.commit();
+		}
+		event = null;
+	}
+
+	public void setBytesIn(long bytesIn)
+	{
+		this.bytesIn = bytesIn;
+	}
+
+	public void setBytesOut(long bytesOut)
+	{
+		this.bytesOut = bytesOut;
+	}
+
+	public void setSymbols(long symbols)
+	{
+		this.symbols = symbols;
+	}
+
+	public void setPayloadBits(long payloadBits)
+	{
+		this.payloadBits = payloadBits;
+	}
+
+	/*
+	 *   addQueueStats() - record the queue depths of a pipelined
+	 *                     reader or writer.
+	 */
+
+	public void addQueueStats(ChunkRing.Stats stats)
+	{
+		queues.add(stats);
+	}
+
+	/*
+	 *   setEntropy() - compute the order-0 entropy of the symbols
+	 *                  from their frequencies.
+	 */
+
+	public void setEntropy(int[] freq)
+	{
+		long total = 0;
+		for (int f : freq)
+			total += f;
+
+		double bits = 0.0;
+		for (int f : freq) {
+			if (f > 0) {
+				double p = (double) f / total;
+				bits -= p * Math.log(p);
+			}
+		}
+		entropy = bits / Math.log(2.0);
+	}
+
+	/*
+	 *   finish() - record the JFR event for the whole run.
+	 */
+
+	public void finish()
+	{
+		CodecEvent e = new CodecEvent();
+		if (e.shouldCommit()) {
+			Snapshot s = snapshot();
+			e.operation = operation;
+			e.file = file;
+			e.bytesIn = s.bytesIn;
+			e.bytesOut = s.bytesOut;
+			e.symbols = s.symbols;
+			e.bitsPerSymbol = s.bitsPerSymbol;
+			e.entropyGap = s.entropyGap;
+			e.bytesPerSecond = (long) (s.throughput * 1e6);
+			e.commit();
+		}
+	}
+
+	/*
+	 *   snapshot() - return a copy of the current numbers.
+	 */
+
+	public Snapshot snapshot()
+	{
+		return new Snapshot(this);
+	}
+
+	/*
+	 *    Snapshot - an immutable copy of the metrics of a run.
+	 */
+
+	public static class Snapshot
+	{
+		public final String operation;
+		public final long[] phaseNanos;      // Indexed by Phase.ordinal().
+		public final long totalNanos;
+		public final long bytesIn;
+		public final long bytesOut;
+		public final long symbols;
+		public final double bitsPerSymbol;   // Payload bits per symbol.
+		public final double entropy;         // Order-0 entropy per symbol.
+		public final double entropyGap;      // bitsPerSymbol - entropy.
+		public final double throughput;      // Uncompressed MB/s.
+		public final List<ChunkRing.Stats> queues;   // Pipelined I/O only.
+
+		private Snapshot(CodecMetrics m)
+		{
+			operation = m.operation;
+			phaseNanos = m.phaseNanos.clone();
+			totalNanos = m.runNanos;
+			bytesIn = m.bytesIn;
+			bytesOut = m.bytesOut;
+			symbols = m.symbols;
+			bitsPerSymbol = m.symbols == 0 ? 0.0 : (double) m.payloadBits / m.symbols;
+			entropy = m.entropy;
+			entropyGap = m.symbols == 0 ? 0.0 : bitsPerSymbol - entropy;
+			queues = Collections.unmodifiableList(
+					new ArrayList<ChunkRing.Stats>(m.queues));
+
+			long plain = m.operation.equals("decode") ? m.bytesOut : m.bytesIn;
+			throughput = m.runNanos == 0 ? 0.0 : (plain / 1e6) / (m.runNanos / 1e9);
+		}
+
+		public long phaseNanos(Phase phase)
+		{
+			return phaseNanos[phase.ordinal()];
+		}
+
+		public String toString()
+		{
+			String str = operation + "\n";
+			for (Phase p : Phase.values()) {
+				if (phaseNanos[p.ordinal()] != 0)
+					str = str + String.format("  %-10s %10.3f ms\n",
+							p.name().toLowerCase(), phaseNanos[p.ordinal()] / 1e6);
+			}
+			str = str + String.format("  %-10s %10.3f ms\n", "total", totalNanos / 1e6);
+			str = str + String.format("  bytes in %d  bytes out %d  symbols %d\n",
+					bytesIn, bytesOut, symbols);
+			str = str + String.format("  bits/symbol %.4f  entropy %.4f  gap %.4f\n",
+					bitsPerSymbol, entropy, entropyGap);
+			str = str + String.format("  throughput %.2f MB/s", throughput);
+			for (ChunkRing.Stats q : queues)
+				str = str + "\n  " + q;
+			return str;
+		}
+	}
+}
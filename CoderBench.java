@@ -0,0 +1,115 @@
+/*
+ *    class CoderBench - A program to compare the Huffman and tANS coders.
+ *
+ *    Usage:  java CoderBench file...
+ *
+ *    Each file is coded in memory with a Huffman tree and with a
+ *    tANS table (of 2^11 slots, and of 2^14), decoded again and
+ *    checked.  For each coder the program prints the coded size with
+ *    its table, the bits per byte against the order-0 entropy, and
+ *    the best encode and decode speeds of several runs.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class CoderBench {
+
+	private static final int RUNS = 5;   // Timed runs of each coder.
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1) {
+			System.out.println("Usage: java CoderBench file...");
+			System.exit(0);
+		}
+
+		System.out.printf("%-20s %-8s %12s %10s %10s %10s %10s\n", "file", "coder",
+				"bytes", "bits/byte", "entropy", "enc MB/s", "dec MB/s");
+		for (String name : args) {
+			byte[] data = Files.readAllBytes(Paths.get(name));
+			int[] freq = new int[256];
+			for (byte b : data)
+				freq[b & 0xff]++;
+			double entropy = TransformBench.entropy(data);
+
+			bench(name, "huffman", data, freq, 0, entropy);
+			bench(name, "tans:11", data, freq, 11, entropy);
+			bench(name, "tans:14", data, freq, 14, entropy);
+		}
+	}
+
+	/*
+	 *    bench() - time one coder on the data; tableLog 0 means the
+	 *              Huffman tree.
+	 */
+
+	private static void bench(String name, String coder, byte[] data, int[] freq,
+			int tableLog, double entropy)
+	{
+		ReusableOutputStream packed = new ReusableOutputStream(data.length / 2 + 1024);
+		byte[] back = new byte[data.length];
+		long encBest = Long.MAX_VALUE;
+		long decBest = Long.MAX_VALUE;
+		// The tANS table size actually used, as a header records it.
+		int log = tableLog == 0 ? 0 : TansCoder.build(freq, tableLog).tableLog();
+
+		for (int run = 0; run < RUNS; run++) {
+			packed.reset();
+			long start = System.nanoTime();
+			BitWriter bitw = new BitWriter(packed, "<bench>");
+			if (tableLog == 0) {
+				HuffmanTree tree = new HuffmanTree(256);
+				tree.build(freq);
+				tree.makeCodes();
+				tree.write(bitw);
+				for (byte b : data)
+					bitw.writeBits(tree.code(b & 0xff), tree.length(b & 0xff));
+			}
+			else {
+				TansCoder tans = TansCoder.build(freq, tableLog);
+				tans.write(bitw);
+				tans.encode(bitw, data, data.length);
+			}
+			bitw.close();
+			encBest = Math.min(encBest, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			ReusableInputStream in = new ReusableInputStream();
+			in.reset(packed.buffer(), 0, packed.size());
+			BitReader bitr = new BitReader(in, "<bench>");
+			if (tableLog == 0) {
+				HuffmanTree tree = new HuffmanTree(256);
+				tree.read(bitr);
+				int root = tree.root();
+				for (int i = 0; i < back.length; i++) {
+					int n = root;
+					do {
+						n = bitr.readBit() == 0 ? tree.left(n) : tree.right(n);
+					} while (!tree.isLeaf(n));
+					back[i] = (byte) tree.symbol(n);
+				}
+			}
+			else {
+				TansCoder tans = TansCoder.read(bitr, log);
+				if (back.length > 0)
+					tans.start(bitr);
+				for (int i = 0; i < back.length; i++)
+					back[i] = (byte) tans.next(bitr);
+			}
+			decBest = Math.min(decBest, System.nanoTime() - start);
+
+			if (!Arrays.equals(data, back)) {
+				System.out.printf("%s: %s does not round trip\n", name, coder);
+				System.exit(1);
+			}
+		}
+
+		double mb = data.length / 1e6;
+		System.out.printf("%-20s %-8s %12d %10.4f %10.4f %10.1f %10.1f\n",
+				name, coder, packed.size(),
+				data.length == 0 ? 0.0 : packed.size() * 8.0 / data.length, entropy,
+				mb / (encBest / 1e9), mb / (decBest / 1e9));
+	}
+}
@@ -0,0 +1,545 @@
+/*
+ *    class DeflateEncoder
+ *
+ *    An LZ77 coder writing DEFLATE streams (RFC 1951), which gzip,
+ *    zlib and java.util.zip can read.
+ *
+ *    Repeated strings are found with hash chains, as zlib finds
+ *    them: every position is filed under a hash of its next three
+ *    bytes, head[] holding the latest position of each hash and
+ *    prev[] the position before it with the same hash, over a window
+ *    of the last 32K bytes.  A match is looked for by walking the
+ *    chain of the current position, comparing bytes.  The level sets
+ *    how far the chain is walked and whether, before taking a match,
+ *    the next position is tried for a longer one (lazy matching).
+ *
+ *    The literals, match lengths and match distances of each block
+ *    of BLOCK_SYMBOLS symbols are coded with Huffman codes built from
+ *    their frequencies by HuffmanTree, limited to 15 bits.  Each
+ *    block is written whichever way is shortest: with those codes
+ *    (stored as code lengths, run length coded), with the fixed
+ *    codes of the standard, or as the raw bytes.
+ */
+
+import java.util.*;
+
+public class DeflateEncoder
+{
+	public static final int DEFAULT_LEVEL = 6;
+	public static final int BLOCK_SYMBOLS = 1 << 15;   // Symbols per block.
+
+	private static final int WINDOW = 1 << 15;         // Farthest match.
+	private static final int WINDOW_MASK = WINDOW - 1;
+	private static final int HASH_BITS = 15;
+	private static final int MIN_MATCH = 3;
+	private static final int MAX_MATCH = 258;
+	private static final int TOO_FAR = 4096;           // Farthest 3-byte match
+	                                                   //    worth taking.
+	private static final int MAX_BITS = 15;            // Longest code.
+	private static final int MAX_LENGTH_BITS = 7;      // Longest code-length code.
+
+	private static final int END_OF_BLOCK = 256;
+	private static final int LITERALS = 286;           // Literal/length symbols.
+	private static final int DISTANCES = 30;           // Distance symbols.
+
+	// For each level: the match length past which the chain is cut
+	// to a quarter, the length past which no lazy match is tried
+	// (for levels 1 to 3, which take the first match, the longest
+	// match whose positions are all filed), the length at which the
+	// search stops, and the longest chain walked.  zlib's values.
+
+	private static final int[][] LEVELS = {
+		{ 0, 0, 0, 0 },
+		{ 4, 4, 8, 4 },
+		{ 4, 5, 16, 8 },
+		{ 4, 6, 32, 32 },
+		{ 4, 4, 16, 16 },
+		{ 8, 16, 32, 32 },
+		{ 8, 16, 128, 128 },
+		{ 8, 32, 128, 256 },
+		{ 32, 128, 258, 1024 },
+		{ 32, 258, 258, 4096 },
+	};
+
+	private static final int[] LENGTH_BASE = {
+		3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+		35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private static final int[] LENGTH_EXTRA = {
+		0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+		3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+	private static final int[] DIST_BASE = {
+		1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+		257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+		8193, 12289, 16385, 24577 };
+	private static final int[] DIST_EXTRA = {
+		0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+		7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+	private static final int[] LENGTH_ORDER = {   // Order of the code-length
+		16, 17, 18, 0, 8, 7, 9, 6, 10, 5,         //    code lengths.
+		11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+	private static final int[] LENGTH_CODE = new int[MAX_MATCH + 1];   // By length.
+	private static final int[] DIST_CODE = new int[512];   // By distance - 1,
+	                                                       //    then by
+	                                                       //    (distance - 1) / 128.
+	private static final int[] FIXED_LIT_LENGTHS = new int[LITERALS];
+	private static final int[] FIXED_DIST_LENGTHS = new int[DISTANCES];
+
+	static {
+		for (int c = 0; c < LENGTH_BASE.length; c++) {
+			for (int len = LENGTH_BASE[c]; len < LENGTH_BASE[c] + (1 << LENGTH_EXTRA[c])
+					&& len <= MAX_MATCH; len++)
+				LENGTH_CODE[len] = c;
+		}
+		LENGTH_CODE[MAX_MATCH] = 28;
+		for (int c = 0; c < DISTANCES; c++) {
+			for (int d = DIST_BASE[c]; d < DIST_BASE[c] + (1 << DIST_EXTRA[c]); d++) {
+				if (d <= 256)
+					DIST_CODE[d - 1] = c;
+				else
+					DIST_CODE[256 + ((d - 1) >> 7)] = c;
+			}
+		}
+		for (int s = 0; s < LITERALS; s++)
+			FIXED_LIT_LENGTHS[s] = s < 144 ? 8 : s < 256 ? 9 : s < 280 ? 7 : 8;
+		Arrays.fill(FIXED_DIST_LENGTHS, 5);
+	}
+
+	private int goodLength;
+	private int lazyLength;
+	private int niceLength;
+	private int maxChain;
+	private boolean lazy;            // Try the next position first.
+
+	private int[] head = new int[1 << HASH_BITS];   // Latest position of each hash.
+	private int[] prev = new int[WINDOW];           // Earlier position, same hash.
+	private byte[] data;
+	private int end;                 // End of the input.
+	private int matchDist;           // Distance of the last match found.
+
+	private int[] lit = new int[BLOCK_SYMBOLS];     // Literal, or match length,
+	private int[] dist = new int[BLOCK_SYMBOLS];    //    and distance or 0.
+	private int symbols = 0;         // Symbols in the block.
+	private int blockStart;          // First input byte of the block.
+	private int blockBytes = 0;      // Input bytes in the block.
+	private LsbBitWriter out;
+
+	/*
+	 *   Constructor - the level is 1 (fastest) to 9 (smallest).
+	 */
+
+	public DeflateEncoder(int level)
+	{
+		if (level < 1 || level > 9)
+			throw new IllegalArgumentException("deflate level: " + level);
+		goodLength = LEVELS[level][0];
+		lazyLength = LEVELS[level][1];
+		niceLength = LEVELS[level][2];
+		maxChain = LEVELS[level][3];
+		lazy = level >= 4;
+	}
+
+	/*
+	 *   encode() - write len bytes of data starting at off as one
+	 *              complete DEFLATE stream.
+	 */
+
+	public void encode(byte[] data, int off, int len, LsbBitWriter out)
+	{
+		this.data = data;
+		this.end = off + len;
+		this.out = out;
+		Arrays.fill(head, -1);
+		symbols = 0;
+		blockStart = off;
+		blockBytes = 0;
+
+		if (lazy)
+			parseLazy(off);
+		else
+			parseGreedy(off);
+		flushBlock(true);
+		this.data = null;
+	}
+
+	/*
+	 *   parseGreedy() - take the longest match found at each position,
+	 *                   as zlib's levels 1 to 3 do.  The positions
+	 *                   inside long matches are not filed.
+	 */
+
+	private void parseGreedy(int p)
+	{
+		while (p < end) {
+			int len = 0;
+			if (p + MIN_MATCH <= end) {
+				insert(p);
+				len = longestMatch(p, MIN_MATCH - 1, maxChain);
+			}
+			if (len >= MIN_MATCH) {
+				emitMatch(len, matchDist);
+				if (len <= lazyLength) {
+					for (int q = p + 1; q < p + len && q + MIN_MATCH <= end; q++)
+						insert(q);
+				}
+				p += len;
+			}
+			else
+				emitLiteral(data[p++] & 0xff);
+		}
+	}
+
+	/*
+	 *   parseLazy() - before taking a match, look for a longer one at
+	 *                 the next position, and if there is one write a
+	 *                 literal and take that instead.
+	 */
+
+	private void parseLazy(int p)
+	{
+		int prevLen = MIN_MATCH - 1;     // Match found at p - 1,
+		int prevDist = 0;                //    not yet taken.
+		boolean pending = false;         // Byte p - 1 not yet written.
+
+		while (p < end) {
+			int len = MIN_MATCH - 1;
+			int d = 0;
+			if (p + MIN_MATCH <= end) {
+				insert(p);
+				if (prevLen < lazyLength) {
+					len = longestMatch(p, prevLen,
+							prevLen >= goodLength ? maxChain >> 2 : maxChain);
+					d = matchDist;
+					if (len == MIN_MATCH && d > TOO_FAR)
+						len = MIN_MATCH - 1;
+				}
+			}
+
+			if (prevLen >= MIN_MATCH && len <= prevLen) {
+				// The match at p - 1 is as long as any at p: take it.
+				emitMatch(prevLen, prevDist);
+				int next = p - 1 + prevLen;
+				for (int q = p + 1; q < next && q + MIN_MATCH <= end; q++)
+					insert(q);
+				p = next;
+				pending = false;
+				prevLen = MIN_MATCH - 1;
+			}
+			else {
+				if (pending)
+					emitLiteral(data[p - 1] & 0xff);
+				pending = true;
+				prevLen = len;
+				prevDist = d;
+				p++;
+			}
+		}
+		if (pending)
+			emitLiteral(data[p - 1] & 0xff);
+	}
+
+	/*
+	 *   insert() - file position p under the hash of its next three
+	 *              bytes.
+	 */
+
+	private void insert(int p)
+	{
+		int h = ((data[p] & 0xff) << 10 ^ (data[p + 1] & 0xff) << 5 ^ (data[p + 2] & 0xff))
+				& ((1 << HASH_BITS) - 1);
+		prev[p & WINDOW_MASK] = head[h];
+		head[h] = p;
+	}
+
+	/*
+	 *   longestMatch() - walk the chain of position p (just filed) for
+	 *                    a match longer than best, stopping after chain
+	 *                    positions or at niceLength.  Returns its
+	 *                    length, and its distance in matchDist, or
+	 *                    best if there is none longer.
+	 */
+
+	private int longestMatch(int p, int best, int chain)
+	{
+		int maxLen = Math.min(MAX_MATCH, end - p);
+		int limit = Math.max(p - WINDOW, -1);
+		int cand = prev[p & WINDOW_MASK];
+		int nice = Math.min(niceLength, maxLen);
+
+		while (cand > limit && chain-- > 0 && best < maxLen) {
+			if (data[cand + best] == data[p + best] && data[cand] == data[p]) {
+				int len = 1;
+				while (len < maxLen && data[cand + len] == data[p + len])
+					len++;
+				if (len > best) {
+					best = len;
+					matchDist = p - cand;
+					if (len >= nice)
+						break;
+				}
+			}
+			int next = prev[cand & WINDOW_MASK];
+			if (next >= cand)
+				break;               // The chain has wrapped.
+			cand = next;
+		}
+		return best;
+	}
+
+	private void emitLiteral(int b)
+	{
+		lit[symbols] = b;
+		dist[symbols++] = 0;
+		blockBytes++;
+		if (symbols == BLOCK_SYMBOLS)
+			flushBlock(false);
+	}
+
+	private void emitMatch(int len, int d)
+	{
+		lit[symbols] = len;
+		dist[symbols++] = d;
+		blockBytes += len;
+		if (symbols == BLOCK_SYMBOLS)
+			flushBlock(false);
+	}
+
+	/*
+	 *   flushBlock() - write the symbols gathered as one block, in
+	 *                  whichever form is shortest.
+	 */
+
+	private void flushBlock(boolean last)
+	{
+		long[] litFreq = new long[LITERALS];
+		long[] distFreq = new long[DISTANCES];
+		long extraBits = 0;
+		for (int i = 0; i < symbols; i++) {
+			if (dist[i] == 0)
+				litFreq[lit[i]]++;
+			else {
+				int lc = LENGTH_CODE[lit[i]];
+				int dc = distCode(dist[i]);
+				litFreq[257 + lc]++;
+				distFreq[dc]++;
+				extraBits += LENGTH_EXTRA[lc] + DIST_EXTRA[dc];
+			}
+		}
+		litFreq[END_OF_BLOCK]++;
+
+		// The dynamic codes and the lengths that describe them.
+
+		int[] litLengths = lengths(litFreq, MAX_BITS);
+		int[] distLengths = lengths(distFreq, MAX_BITS);
+		int hlit = LITERALS;
+		while (hlit > 257 && litLengths[hlit - 1] == 0)
+			hlit--;
+		int hdist = DISTANCES;
+		while (hdist > 1 && distLengths[hdist - 1] == 0)
+			hdist--;
+		int[] all = new int[hlit + hdist];
+		System.arraycopy(litLengths, 0, all, 0, hlit);
+		System.arraycopy(distLengths, 0, all, hlit, hdist);
+		int[] runs = runLengths(all);
+
+		long[] lenFreq = new long[19];
+		for (int r : runs)
+			lenFreq[r & 0xff]++;
+		int[] lenLengths = lengths(lenFreq, MAX_LENGTH_BITS);
+		int hclen = 19;
+		while (hclen > 4 && lenLengths[LENGTH_ORDER[hclen - 1]] == 0)
+			hclen--;
+
+		long dynamicBits = 3 + 14 + 3 * hclen + extraBits
+				+ cost(litFreq, litLengths) + cost(distFreq, distLengths);
+		for (int r : runs) {
+			int s = r & 0xff;
+			dynamicBits += lenLengths[s] + (s == 16 ? 2 : s == 17 ? 3 : s == 18 ? 7 : 0);
+		}
+		long fixedBits = 3 + extraBits
+				+ cost(litFreq, FIXED_LIT_LENGTHS) + cost(distFreq, FIXED_DIST_LENGTHS);
+		long storedBits = 8L * blockBytes + 40L * Math.max(1, (blockBytes + 65534) / 65535) + 7;
+
+		if (storedBits < dynamicBits && storedBits < fixedBits)
+			writeStored(last);
+		else if (fixedBits <= dynamicBits) {
+			out.writeBits(last ? 1 : 0, 1);
+			out.writeBits(1, 2);
+			writeSymbols(FIXED_LIT_LENGTHS, FIXED_DIST_LENGTHS);
+		}
+		else {
+			out.writeBits(last ? 1 : 0, 1);
+			out.writeBits(2, 2);
+			out.writeBits(hlit - 257, 5);
+			out.writeBits(hdist - 1, 5);
+			out.writeBits(hclen - 4, 4);
+			for (int i = 0; i < hclen; i++)
+				out.writeBits(lenLengths[LENGTH_ORDER[i]], 3);
+			int[] lenCodes = codes(lenLengths);
+			for (int r : runs) {
+				int s = r & 0xff;
+				out.writeCode(lenCodes[s], lenLengths[s]);
+				if (s == 16)
+					out.writeBits(r >>> 8, 2);
+				else if (s == 17)
+					out.writeBits(r >>> 8, 3);
+				else if (s == 18)
+					out.writeBits(r >>> 8, 7);
+			}
+			writeSymbols(litLengths, distLengths);
+		}
+
+		blockStart += blockBytes;
+		blockBytes = 0;
+		symbols = 0;
+	}
+
+	/*
+	 *   writeSymbols() - write the block's symbols and end of block
+	 *                    with the codes of the given lengths.
+	 */
+
+	private void writeSymbols(int[] litLengths, int[] distLengths)
+	{
+		int[] litCodes = codes(litLengths);
+		int[] distCodes = codes(distLengths);
+
+		for (int i = 0; i < symbols; i++) {
+			if (dist[i] == 0)
+				out.writeCode(litCodes[lit[i]], litLengths[lit[i]]);
+			else {
+				int len = lit[i];
+				int lc = LENGTH_CODE[len];
+				out.writeCode(litCodes[257 + lc], litLengths[257 + lc]);
+				out.writeBits(len - LENGTH_BASE[lc], LENGTH_EXTRA[lc]);
+				int dc = distCode(dist[i]);
+				out.writeCode(distCodes[dc], distLengths[dc]);
+				out.writeBits(dist[i] - DIST_BASE[dc], DIST_EXTRA[dc]);
+			}
+		}
+		out.writeCode(litCodes[END_OF_BLOCK], litLengths[END_OF_BLOCK]);
+	}
+
+	/*
+	 *   writeStored() - write the block's bytes as they are, in pieces
+	 *                   of up to 65535 bytes.
+	 */
+
+	private void writeStored(boolean last)
+	{
+		int p = blockStart;
+		int left = blockBytes;
+		do {
+			int n = Math.min(left, 65535);
+			left -= n;
+			out.writeBits(last && left == 0 ? 1 : 0, 1);
+			out.writeBits(0, 2);
+			out.alignToByte();
+			out.writeBits(n, 16);
+			out.writeBits(~n, 16);
+			out.writeBytes(data, p, n);
+			p += n;
+		} while (left > 0);
+	}
+
+	/*
+	 *   runLengths() - code a list of code lengths with DEFLATE's
+	 *                  code-length symbols: 0-15 for a length, 16 to
+	 *                  repeat the last 3-6 times, 17 and 18 for 3-10
+	 *                  and 11-138 zeros.  Each entry is the symbol
+	 *                  plus its extra bits shifted up by 8.
+	 */
+
+	private static int[] runLengths(int[] lengths)
+	{
+		int[] runs = new int[lengths.length];
+		int n = 0;
+
+		for (int i = 0; i < lengths.length; ) {
+			int v = lengths[i];
+			int r = 1;
+			while (i + r < lengths.length && lengths[i + r] == v)
+				r++;
+			i += r;
+
+			if (v == 0) {
+				while (r >= 11) {
+					int k = Math.min(r, 138);
+					runs[n++] = 18 | (k - 11) << 8;
+					r -= k;
+				}
+				if (r >= 3) {
+					runs[n++] = 17 | (r - 3) << 8;
+					r = 0;
+				}
+			}
+			else {
+				runs[n++] = v;
+				r--;
+				while (r >= 3) {
+					int k = Math.min(r, 6);
+					runs[n++] = 16 | (k - 3) << 8;
+					r -= k;
+				}
+			}
+			while (r-- > 0)
+				runs[n++] = v;
+		}
+		return Arrays.copyOf(runs, n);
+	}
+
+	/*
+	 *   lengths() - the code length of each symbol of a code built
+	 *               from freq, none longer than maxLength.
+	 */
+
+	private static int[] lengths(long[] freq, int maxLength)
+	{
+		HuffmanTree t = new HuffmanTree(freq.length);
+		t.buildLimited(freq, maxLength);
+		int[] lengths = new int[freq.length];
+		for (int s = 0; s < freq.length; s++)
+			lengths[s] = t.length(s);
+		return lengths;
+	}
+
+	/*
+	 *   codes() - the canonical codes of the given lengths, as
+	 *             RFC 1951 assigns them: in order of length, then of
+	 *             symbol.
+	 */
+
+	private static int[] codes(int[] lengths)
+	{
+		int[] count = new int[MAX_BITS + 1];
+		for (int len : lengths)
+			count[len]++;
+		count[0] = 0;
+
+		int[] next = new int[MAX_BITS + 1];
+		int code = 0;
+		for (int len = 1; len <= MAX_BITS; len++) {
+			code = (code + count[len - 1]) << 1;
+			next[len] = code;
+		}
+		int[] codes = new int[lengths.length];
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] > 0)
+				codes[s] = next[lengths[s]]++;
+		}
+		return codes;
+	}
+
+	private static long cost(long[] freq, int[] lengths)
+	{
+		long bits = 0;
+		for (int s = 0; s < freq.length; s++)
+			bits += freq[s] * lengths[s];
+		return bits;
+	}
+
+	private static int distCode(int d)
+	{
+		return d <= 256 ? DIST_CODE[d - 1] : DIST_CODE[256 + ((d - 1) >> 7)];
+	}
+}
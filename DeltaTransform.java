@@ -0,0 +1,116 @@
+/*
+ *    class DeltaTransform
+ *
+ *    Delta coding of an array of little-endian integers of 1, 2, 4
+ *    or 8 bytes.  Each element is replaced by its difference from the
+ *    element before it (wrapping on overflow), so slowly changing
+ *    values such as timestamps and counters become runs of small
+ *    numbers.  Bytes past the last whole element are left as they are.
+ *
+ *    The forward loops have no dependence from one element to the
+ *    next, so the JIT compiler can vectorise them; the inverse is a
+ *    running sum.
+ */
+
+import java.lang.invoke.*;
+import java.nio.*;
+
+public class DeltaTransform implements Transform
+{
+	public static final int ID = 4;
+	public static final int DEFAULT_WIDTH = 4;
+
+	private static final VarHandle SHORT =
+			MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT =
+			MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG =
+			MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private int width;        // Bytes per element.
+
+	public DeltaTransform(int width)
+	{
+		if (width != 1 && width != 2 && width != 4 && width != 8)
+			throw new IllegalArgumentException("delta width: " + width);
+		this.width = width;
+	}
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return width;
+	}
+
+	public String name()
+	{
+		return "delta";
+	}
+
+	/*
+	 *   forward() - replace each element by its difference from the
+	 *               one before.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		byte[] out = data.clone();
+		int end = data.length - data.length % width;   // End of the elements.
+
+		switch (width) {
+		case 1:
+			for (int i = 1; i < end; i++)
+				out[i] = (byte) (data[i] - data[i - 1]);
+			break;
+		case 2:
+			for (int i = 2; i < end; i += 2)
+				SHORT.set(out, i, (short) ((short) SHORT.get(data, i)
+						- (short) SHORT.get(data, i - 2)));
+			break;
+		case 4:
+			for (int i = 4; i < end; i += 4)
+				INT.set(out, i, (int) INT.get(data, i) - (int) INT.get(data, i - 4));
+			break;
+		default:
+			for (int i = 8; i < end; i += 8)
+				LONG.set(out, i, (long) LONG.get(data, i) - (long) LONG.get(data, i - 8));
+			break;
+		}
+		return out;
+	}
+
+	/*
+	 *   inverse() - add up the differences.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		byte[] out = data.clone();
+		int end = data.length - data.length % width;
+
+		switch (width) {
+		case 1:
+			for (int i = 1; i < end; i++)
+				out[i] = (byte) (out[i] + out[i - 1]);
+			break;
+		case 2:
+			for (int i = 2; i < end; i += 2)
+				SHORT.set(out, i, (short) ((short) SHORT.get(out, i)
+						+ (short) SHORT.get(out, i - 2)));
+			break;
+		case 4:
+			for (int i = 4; i < end; i += 4)
+				INT.set(out, i, (int) INT.get(out, i) + (int) INT.get(out, i - 4));
+			break;
+		default:
+			for (int i = 8; i < end; i += 8)
+				LONG.set(out, i, (long) LONG.get(out, i) + (long) LONG.get(out, i - 8));
+			break;
+		}
+		return out;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ *    class EngineBench - A program to time CodecEngine reuse.
+ *
+ *    Usage:  java EngineBench file [iterations]
+ *
+ *    The file is encoded and decoded over and over by the calling
+ *    thread's engine.  After a warm-up the program prints the speed
+ *    and the bytes allocated per encode and per decode, which should
+ *    be zero once the engine's buffers have grown.
+ */
+
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class EngineBench {
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: java EngineBench file [iterations]");
+			System.exit(0);
+		}
+
+		byte[] data = Files.readAllBytes(Paths.get(args[0]));
+		int iterations = args.length == 2 ? Integer.parseInt(args[1]) : 200;
+		com.sun.management.ThreadMXBean mx =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+
+		CodecEngine engine = CodecEngine.forThread();
+		int packedLen = engine.encode(data, 0, data.length);
+		byte[] packed = Arrays.copyOf(engine.output(), packedLen);
+
+		for (int i = 0; i < iterations / 4 + 1; i++) {   // Warm up.
+			engine.encode(data, 0, data.length);
+			engine.decode(packed, 0, packedLen);
+		}
+		if (engine.outputLength() != data.length
+				|| !Arrays.equals(data, Arrays.copyOf(engine.output(), data.length))) {
+			System.out.println("Decoded data does not match the input");
+			System.exit(1);
+		}
+
+		long alloc = mx.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			CodecEngine.forThread().encode(data, 0, data.length);
+		long encNanos = System.nanoTime() - start;
+		long encAlloc = mx.getThreadAllocatedBytes(tid) - alloc;
+
+		alloc = mx.getThreadAllocatedBytes(tid);
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			CodecEngine.forThread().decode(packed, 0, packedLen);
+		long decNanos = System.nanoTime() - start;
+		long decAlloc = mx.getThreadAllocatedBytes(tid) - alloc;
+
+		double mb = (double) data.length * iterations / 1e6;
+		System.out.printf("bytes %d  packed %d\n", data.length, packedLen);
+		System.out.printf("encode %.1f MB/s  %d bytes allocated per call\n",
+				mb / (encNanos / 1e9), encAlloc / iterations);
+		System.out.printf("decode %.1f MB/s  %d bytes allocated per call\n",
+				mb / (decNanos / 1e9), decAlloc / iterations);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ *    class FrequencyCounter
+ *
+ *    Counts the byte frequencies of a file in parallel.
+ *
+ *    The file is memory mapped a region at a time (a mapping is
+ *    limited to 2 GiB) and each region is cut into slices that are
+ *    counted by separate tasks on the common fork/join pool.  Each
+ *    task keeps its own counts, so there is no sharing while the
+ *    bytes are scanned; the counts are added together at the end.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+public class FrequencyCounter
+{
+	private static final long REGION = 1L << 30;   // Bytes mapped at a time.
+	private static final int SLICE = 1 << 22;      // Bytes counted per task.
+
+	/*
+	 *   count() - return the frequency of each byte value in the file.
+	 */
+
+	public static long[] count(String filename) throws IOException
+	{
+		long[] freq = new long[256];
+
+		try (FileChannel ch = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.READ)) {
+			long size = ch.size();
+			for (long pos = 0; pos < size; pos += REGION) {
+				long len = Math.min(REGION, size - pos);
+				MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+				long[] part = ForkJoinPool.commonPool().invoke(
+						new CountTask(map, 0, (int) len));
+				for (int i = 0; i < 256; i++)
+					freq[i] += part[i];
+			}
+		}
+		return freq;
+	}
+
+	/*
+	 *   count() - return the frequency of each byte value in data.
+	 */
+
+	public static long[] count(byte[] data)
+	{
+		return ForkJoinPool.commonPool().invoke(
+				new CountTask(ByteBuffer.wrap(data), 0, data.length));
+	}
+
+	/*
+	 *    CountTask - count the bytes from start to end of a buffer,
+	 *                splitting in two while the range is large.
+	 */
+
+	private static class CountTask extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private transient ByteBuffer buf;
+		private int start;
+		private int end;
+
+		CountTask(ByteBuffer buf, int start, int end)
+		{
+			this.buf = buf;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected long[] compute()
+		{
+			if (end - start > SLICE) {
+				int mid = start + (end - start) / 2;
+				CountTask left = new CountTask(buf, start, mid);
+				left.fork();
+				long[] r = new CountTask(buf, mid, end).compute();
+				long[] l = left.join();
+				for (int i = 0; i < 256; i++)
+					r[i] += l[i];
+				return r;
+			}
+
+			// Four sets of counters so that runs of the same byte
+			// do not all wait on one counter.
+
+			int[] c0 = new int[256];
+			int[] c1 = new int[256];
+			int[] c2 = new int[256];
+			int[] c3 = new int[256];
+			int i = start;
+			for (; i + 3 < end; i += 4) {
+				c0[buf.get(i) & 0xff]++;
+				c1[buf.get(i + 1) & 0xff]++;
+				c2[buf.get(i + 2) & 0xff]++;
+				c3[buf.get(i + 3) & 0xff]++;
+			}
+			for (; i < end; i++)
+				c0[buf.get(i) & 0xff]++;
+
+			long[] freq = new long[256];
+			for (int b = 0; b < 256; b++)
+				freq[b] = (long) c0[b] + c1[b] + c2[b] + c3[b];
+			return freq;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ *    class HArchive - A program to keep many files in one archive.
+ *
+ *    Usage:  java HArchive c archive.har file...   create an archive
+ *            java HArchive l archive.har           list its entries
+ *            java HArchive x archive.har [name...] extract all entries,
+ *                                                  or the named ones
+ *
+ *    Files are stored under their names less any root and leading
+ *    .. parts, as tar does, so an archive only ever extracts below
+ *    the current directory.
+ *
+ *    Each file is coded on its own, with its own tree and checksum,
+ *    as a complete .huf stream, and the streams are followed by a
+ *    central directory of names, sizes, offsets and checksums (see
+ *    ArchiveDirectory).  Listing and extracting read the directory
+ *    once and then only the entries wanted.
+ *
+ *    Entries are extracted in parallel by tasks on the common
+ *    fork/join pool, whose idle threads steal work from busy ones.
+ *    Each task reads its entry with positional reads of the shared
+ *    file channel and decodes it with its thread's CodecEngine.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+public class HArchive {
+
+	public static void main(String[] args)
+	{
+		if (args.length < 2 || (args[0].equals("c") && args.length < 3)) {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+
+		String[] names = Arrays.copyOfRange(args, 2, args.length);
+		if (args[0].equals("c"))
+			create(args[1], names);
+		else if (args[0].equals("l"))
+			list(args[1]);
+		else if (args[0].equals("x"))
+			extract(args[1], names);
+		else {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+	}
+
+	/*
+	 *    create() - Code each file and write the archive.
+	 */
+
+	public static void create(String archive, String[] files)
+	{
+		ArchiveDirectory dir = new ArchiveDirectory();
+		CodecEngine engine = CodecEngine.forThread();
+		long offset = 0;
+
+		String[] names = new String[files.length];
+		HashMap<String, String> stored = new HashMap<String, String>();
+		for (int i = 0; i < files.length; i++) {
+			names[i] = entryName(files[i]);
+			if (names[i].isEmpty()) {
+				System.out.println("Incorrect program argument");
+				System.exit(0);
+			}
+			if (ArchiveDirectory.nameLength(names[i]) > ArchiveDirectory.MAX_NAME) {
+				System.out.printf("%s: name too long\n", files[i]);
+				System.exit(0);
+			}
+			String other = stored.put(names[i], files[i]);
+			if (other != null) {
+				System.out.printf("%s and %s are both stored as %s\n",
+						other, files[i], names[i]);
+				System.exit(0);
+			}
+		}
+
+		try (OutputStream out = Streams.buffered(Streams.openOutput(archive))) {
+			for (int i = 0; i < files.length; i++) {
+				byte[] data = Files.readAllBytes(Paths.get(files[i]));
+				int length = engine.encode(data, 0, data.length);
+				out.write(engine.output(), 0, length);
+				dir.add(new ArchiveDirectory.Entry(names[i], offset, length,
+						data.length, engine.checksum()));
+				offset += length;
+			}
+			dir.write(out, offset);
+		}
+		catch (NoSuchFileException e) {
+			System.out.printf("Error opening file %s\n", e.getFile());
+			System.exit(0);
+		}
+		catch (IOException e) {
+			System.out.printf("IOException writing to: %s\n", archive);
+			System.exit(0);
+		}
+	}
+
+	/*
+	 *    entryName() - The name a file is stored under: its path with
+	 *                  the root and any leading .. parts dropped, or
+	 *                  "" if nothing is left.
+	 */
+
+	private static String entryName(String file)
+	{
+		Path path = Paths.get(file).normalize();
+		if (path.getRoot() != null)
+			path = path.getRoot().relativize(path);
+		while (path.getNameCount() > 1 && path.getName(0).toString().equals(".."))
+			path = path.subpath(1, path.getNameCount());
+		if (path.toString().equals(".."))
+			return "";
+		return path.toString();
+	}
+
+	/*
+	 *    list() - Print the size, coded size, checksum and name of each
+	 *             entry.
+	 */
+
+	public static void list(String archive)
+	{
+		try (FileChannel ch = FileChannel.open(Paths.get(archive))) {
+			for (ArchiveDirectory.Entry e : ArchiveDirectory.read(ch).entries())
+				System.out.printf("%12d %12d  %08x  %s\n",
+						e.size, e.length, e.checksum, e.name);
+		}
+		catch (NoSuchFileException e) {
+			System.out.printf("Error opening file %s\n", archive);
+			System.exit(0);
+		}
+		catch (IOException e) {
+			System.out.printf("%s: %s\n", archive, e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/*
+	 *    extract() - Decode the named entries, or all of them, in
+	 *                parallel.  Exits with status 1 if any entry is
+	 *                missing or damaged; the others are still written.
+	 */
+
+	public static void extract(String archive, String[] names)
+	{
+		try (FileChannel ch = FileChannel.open(Paths.get(archive))) {
+			ArchiveDirectory dir = ArchiveDirectory.read(ch);
+			List<ArchiveDirectory.Entry> wanted = dir.entries();
+			AtomicInteger failures = new AtomicInteger();
+
+			if (names.length > 0) {
+				wanted = new ArrayList<ArchiveDirectory.Entry>();
+				for (String name : names) {
+					ArchiveDirectory.Entry e = dir.find(name);
+					if (e == null) {
+						System.out.printf("%s: not in %s\n", name, archive);
+						failures.incrementAndGet();
+					}
+					else
+						wanted.add(e);
+				}
+			}
+
+			// Two tasks must never write the same file at once, so a
+			// name asked for twice, or stored twice, is written once.
+
+			HashSet<Path> paths = new HashSet<Path>();
+			List<ArchiveDirectory.Entry> unique = new ArrayList<ArchiveDirectory.Entry>();
+			for (ArchiveDirectory.Entry e : wanted) {
+				if (paths.add(Paths.get(e.name).normalize()))
+					unique.add(e);
+			}
+			wanted = unique;
+
+			ForkJoinPool.commonPool().invoke(
+					new ExtractTask(ch, wanted, 0, wanted.size(), failures));
+			if (failures.get() > 0)
+				System.exit(1);
+		}
+		catch (NoSuchFileException e) {
+			System.out.printf("Error opening file %s\n", archive);
+			System.exit(0);
+		}
+		catch (IOException e) {
+			System.out.printf("%s: %s\n", archive, e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/*
+	 *    ExtractTask - extract entries start to end of a list, splitting
+	 *                  in two while there is more than one.
+	 */
+
+	private static class ExtractTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private transient FileChannel ch;
+		private transient List<ArchiveDirectory.Entry> entries;
+		private int start;
+		private int end;
+		private AtomicInteger failures;
+
+		ExtractTask(FileChannel ch, List<ArchiveDirectory.Entry> entries,
+				int start, int end, AtomicInteger failures)
+		{
+			this.ch = ch;
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+			this.failures = failures;
+		}
+
+		protected void compute()
+		{
+			if (end - start > 1) {
+				int mid = start + (end - start) / 2;
+				invokeAll(new ExtractTask(ch, entries, start, mid, failures),
+						new ExtractTask(ch, entries, mid, end, failures));
+				return;
+			}
+			if (end == start)
+				return;
+
+			ArchiveDirectory.Entry e = entries.get(start);
+			try {
+				extractEntry(ch, e);
+			}
+			catch (IOException | DataFormatException ex) {
+				System.out.printf("%s: %s\n", e.name, ex.getMessage());
+				failures.incrementAndGet();
+			}
+		}
+	}
+
+	/*
+	 *    extractEntry() - Read, decode, check and write one entry.
+	 *                     Names that would land outside the current
+	 *                     directory are refused.
+	 */
+
+	private static void extractEntry(FileChannel ch, ArchiveDirectory.Entry e)
+			throws IOException, DataFormatException
+	{
+		Path path = Paths.get(e.name).normalize();
+		if (path.isAbsolute() || path.startsWith(".."))
+			throw new IOException("refusing to write outside the current directory");
+		if (e.length > Integer.MAX_VALUE)
+			throw new DataFormatException("entry too large");
+
+		ByteBuffer packed = ArchiveDirectory.readFully(ch, e.offset, (int) e.length);
+		CodecEngine engine = CodecEngine.forThread();
+		int n = engine.decode(packed.array(), 0, packed.limit());
+		if (n != e.size || engine.checksum() != e.checksum)
+			throw new DataFormatException("does not match the archive directory");
+
+		if (path.getParent() != null)
+			Files.createDirectories(path.getParent());
+		try (OutputStream out = Streams.openOutput(path.toString())) {
+			out.write(engine.output(), 0, n);
+		}
+	}
+}
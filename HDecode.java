@@ -3,26 +3,99 @@
  */
 
 import java.io.*;
+import java.util.zip.*;
 
 public class HDecode {
-	// Root of the Huffman Code Tree.
-	private Node root = null;
+	// The Huffman Code Tree.
+	private HuffmanTree tree = new HuffmanTree(256);
 	private String inputFilename;
 	// Declare the number of bytes in the original file
 	private int fileSize;
 	// Declare a BitReader read bits from the file
 	private BitReader bitr;
 	// Initialize an output file stream to write decoded file to
-	private FileOutputStream outF = null;
+	private OutputStream outF = null;
+	// The header of the segment being decoded
+	private HufHeader header = new HufHeader();
+	// Phase timings and counts of the run
+	private CodecMetrics metrics;
+	// Checksum of the decoded bytes
+	private CRC32C crc = new CRC32C();
+	// Check the file without writing the decoded bytes
+	private boolean verifyOnly = false;
+	// Name of the decoded file, "-" for standard output,
+	// or null to name it after the input file
+	private String newFileName = null;
+	// Whether this run created the decoded file, so may remove it
+	private boolean created = false;
+	// Read, decode and write on separate threads
+	private boolean pipelined = false;
+	// Threads decoding one segment together, or 1
+	private int threads = 1;
+	// Number of decoded bytes written
+	private long written = 0;
+	// Decoded bytes are collected here and written a buffer at a time
+	private byte[] buf = new byte[1 << 16];
+	// Symbols decoded, and the bits they took, over all segments
+	private long symbols = 0;
+	private long payloadBits = 0;
+	// Count of each decoded symbol, for the entropy figure
+	private int[] freq = null;
+	private boolean mixedAlphabets = false;
 	
 	public static void main(String[] args)
 			throws FileNotFoundException, IOException
 	{
+		// -m prints the metrics of the run
+		boolean stats = false;
+		// --verify checks the file without writing the output
+		boolean verify = false;
+		// -p overlaps reading, decoding and writing
+		boolean pipelined = false;
+		// -o names the decoded file, - for standard output
+		String output = null;
+		// -j N decodes on N threads
+		int threads = 1;
+		int i = 0;
+		while (i < args.length - 1) {
+			if (args[i].equals("-m"))
+				stats = true;
+			else if (args[i].equals("--verify"))
+				verify = true;
+			else if (args[i].equals("-p"))
+				pipelined = true;
+			else if (args[i].equals("-o") && i + 2 < args.length)
+				output = args[++i];
+			else if (args[i].equals("-j") && i + 2 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else
+				break;
+			i++;
+		}
+		if (args.length != i + 1 || threads < 1) {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+		// the input file may be - for standard input, which
+		// is then decoded to standard output unless -o is given
+		if (output == null && Streams.isStdio(args[i]))
+			output = Streams.STDIO;
+		// keep standard output for the decoded bytes
+		if (output != null && Streams.isStdio(output) && !verify)
+			Streams.useStderrForMessages();
 		// Construct a Huffman Decoder
 		// from file name passed through command line
-		HDecode decoder = new HDecode(args[0]); 
+		HDecode decoder = new HDecode(args[i]); 
+		decoder.setVerifyOnly(verify);
+		decoder.setPipelined(pipelined);
+		decoder.setThreads(threads);
+		decoder.setOutput(output);
 		// decode the contents
 		decoder.decode();
+		if (verify)
+			System.out.printf("OK %s\n", args[i]);
+		if (stats)
+			System.out.println(decoder.getMetrics().snapshot());
 	}
 
 	/* 
@@ -36,12 +109,71 @@ public class HDecode {
 	{ 
 		// initialize global file name
 		this.inputFilename = inputFilename;
+		metrics = new CodecMetrics("decode", inputFilename);
+	}
+
+	/*
+	*	getMetrics() - the timings and counts of this run
+	*/
+
+	public CodecMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/*
+	*	setVerifyOnly() - when set, decode() checks the length and
+	*	checksum of the file but does not write the decoded bytes
+	*/
+
+	public void setVerifyOnly(boolean verifyOnly)
+	{
+		this.verifyOnly = verifyOnly;
 	}
 	
+	/*
+	*	setOutput() - name the decoded file, or "-" for standard
+	*	output; by default a.txt.huf is decoded to a.txt.orig
+	*/
+
+	public void setOutput(String newFileName)
+	{
+		this.newFileName = newFileName;
+	}
+
+	/*
+	*	setPipelined() - when set, a reader thread reads the .huf file
+	*	and a writer thread writes the decoded file, passing buffers
+	*	through rings of recycled chunks, so I/O overlaps decoding
+	*/
+
+	public void setPipelined(boolean pipelined)
+	{
+		this.pipelined = pipelined;
+	}
+
+	/*
+	*	setThreads() - decode on the given number of threads; see
+	*	decodeParallel()
+	*/
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
 	/*
 	*	decode() - reads the compressed file
 	*	reconstructs the tree and reads the encoded bits 
 	*	to reconstruct the original file
+	*
+	*	A file may hold several segments, each with its own header
+	*	and tree (see SegmentIndex); they are decoded in turn into
+	*	the one output file.
+	*
+	*	If the file is cut short, or its checksum does not match
+	*	the decoded bytes, the output file is removed and the
+	*	program exits with status 1.
 	*/
 	
 	public void decode()
@@ -49,26 +181,225 @@ public class HDecode {
 		// try / catch file read/write errors
 		try
 		{
-			// split the file name on period
-			String[] newFileNameArr =  inputFilename.split("\\.");
-			// take the first two parts (filename and file type) and append .orig
-			String newFileName = newFileNameArr[0] + "." + newFileNameArr[1] + ".orig";
-			// make a new output file stream
-			outF = new FileOutputStream(newFileName);
+			// drop the .huf from the file name and append .orig
+			if (newFileName == null)
+				newFileName = Streams.decodedName(inputFilename);
+			// undo an append to the file that did not finish
+			if (!Streams.isStdio(inputFilename))
+				SegmentIndex.recover(inputFilename);
+			// make a new output file stream, unless only verifying
+			if (!verifyOnly) {
+				created = Streams.isNew(newFileName);
+				outF = Streams.openOutput(newFileName);
+			}
+			OutputStream sink = verifyOnly ? OutputStream.nullOutputStream() : outF;
 			// construct our bit reader and output file
-			bitr = new BitReader(inputFilename);
-			// read first 4 bytes as int to get encoded size of file in characters
-			fileSize = bitr.readInt();
-			// Initialize the root of the tree with the following bits
-			root = readTree(bitr);	
-			// initialize a new node
-			Node currentNode = new Node();
-			// declare the flag for finding a leaf node
-			boolean isleaf;
-
-			// loop through until all the characters have been decoded
+			PipelinedInputStream pin = null;
+			PipelinedOutputStream pout = null;
+			if (threads > 1) {
+				// the whole file is read; if it is not one that can be
+				// decoded in parallel it is decoded from memory as usual
+				byte[] packed = Streams.readAll(inputFilename);
+				if (!verifyOnly)
+					sink = Streams.buffered(outF);
+				if (decodeParallel(packed, sink)) {
+					sink.close();
+					return;
+				}
+				bitr = new BitReader(new ByteArrayInputStream(packed), inputFilename);
+			}
+			else if (pipelined) {
+				pin = new PipelinedInputStream(Streams.openInput(inputFilename),
+						ChunkRing.DEFAULT_CHUNKS, ChunkRing.DEFAULT_CHUNK_SIZE);
+				bitr = new BitReader(pin, inputFilename);
+				if (!verifyOnly)
+					sink = pout = new PipelinedOutputStream(outF,
+							ChunkRing.DEFAULT_CHUNKS, ChunkRing.DEFAULT_CHUNK_SIZE);
+			}
+			else {
+				bitr = new BitReader(Streams.openInput(inputFilename), inputFilename);
+				if (!verifyOnly)
+					sink = Streams.buffered(outF);
+			}
+			// decode segments until the end of the file or its footer
+			int segments = 0;
+			long first = bitr.readBits(32);
+			while (first != -1 && (int) first != SegmentIndex.FOOTER_MAGIC) {
+				decodeSegment((int) first, sink);
+				segments++;
+				// each segment is padded to a whole byte
+				bitr.alignToByte();
+				first = bitr.readBits(32);
+			}
+			if (segments == 0)
+				fail(String.format("%s is truncated: no header", inputFilename));
+
+			metrics.setSymbols(symbols);
+			metrics.setPayloadBits(payloadBits);
+			if (!mixedAlphabets)
+				metrics.setEntropy(freq);
+			// (standard input has no length; count the bytes read)
+			metrics.setBytesIn(Streams.isStdio(inputFilename)
+					? bitr.getBitCount() / 8 : new File(inputFilename).length());
+			metrics.setBytesOut(written);
+			metrics.finish();
+			// close the files
+			bitr.close();
+			sink.close();
+			if (pin != null)
+				metrics.addQueueStats(pin.stats());
+			if (pout != null)
+				metrics.addQueueStats(pout.stats());
+		}
+		// catch exceptions
+		catch (FileNotFoundException e) {
+			System.out.printf("Error opening file %s\n", inputFilename);
+			System.exit(0);
+		}
+		catch (IOException e) { 
+			System.out.printf("IOException reading from: %s\n", inputFilename);
+			System.exit(0);
+		}
+		catch (RuntimeException e) {
+			// a damaged tree or transform block
+			fail(String.format("%s is corrupt: %s", inputFilename, e));
+		}
+	
+	}
+
+	/*
+	*	decodeParallel() - decode a single segment file coded with one
+	*	tree on several threads (see ParallelDecoder), writing the
+	*	decoded bytes to sink; returns false, having written nothing,
+	*	if the file is not one ParallelDecoder can decode
+	*/
+
+	private boolean decodeParallel(byte[] packed, OutputStream sink) throws IOException
+	{
+		metrics.begin(CodecMetrics.Phase.DECODE);
+		ParallelDecoder pd = new ParallelDecoder(threads);
+		int n = 0;
+		try {
+			n = pd.decode(packed, 0, packed.length);
+		}
+		catch (DataFormatException e) {
+			fail(String.format("%s is corrupt: %s", inputFilename, e.getMessage()));
+		}
+		if (n < 0)
+			return false;
+		sink.write(pd.output(), 0, n);
+		written = n;
+		metrics.end(CodecMetrics.Phase.DECODE, n);
+		metrics.setBytesIn(packed.length);
+		metrics.setBytesOut(written);
+		metrics.finish();
+		return true;
+	}
+
+	/*
+	*	decodeSegment() - decode one segment, whose first 32 bits
+	*	have been read, writing the decoded bytes to sink
+	*/
+
+	private void decodeSegment(int first, OutputStream sink) throws IOException
+	{
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		long start = bitr.getBitCount() - 32;
+		// read the header, ending in the encoded size of file in characters
+		header.readFrom(bitr, first);
+		fileSize = header.symbolCount;
+		crc.reset();
+		// when transforms were run, collect the decoded bytes in memory
+		// so they can be undone before writing the output file
+		OutputStream out = sink;
+		if (!header.transforms.isEmpty())
+			out = new ByteArrayOutputStream(fileSize);
+		// Initialize the tree with the following bits; files of 16-bit
+		// or word symbols store it as canonical code lengths
+		// (or as several tables, one chosen for each group of symbols)
+		SymbolAlphabet alphabet = header.alphabet;
+		CodeTables tables = null;
+		TansCoder tans = null;
+		if (alphabet != null) {
+			tree = new HuffmanTree(alphabet.size());
+			tree.readLengths(bitr);
+		}
+		else if (header.hasTables()) {
+			tables = CodeTables.read(bitr, header.tables, header.groupSize, fileSize);
+		}
+		else if (header.hasTans()) {
+			tans = TansCoder.read(bitr, header.tableLog);
+		}
+		else if (header.hasPlanes()) {
+			// each plane's tree comes just before its codes
+			if (tree.alphabetSize() != 256)
+				tree = new HuffmanTree(256);
+		}
+		else {
+			if (tree.alphabetSize() != 256)
+				tree = new HuffmanTree(256);
+			readTree(bitr);
+		}
+		// the tree in use; with several tables it changes every group,
+		// with byte planes every plane
+		HuffmanTree codeTree = tables == null ? tree : new HuffmanTree(256);
+		int root = codeTree.root();
+		int group = 0;
+		int groupLeft = 0;
+		long headerBits = bitr.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits - start + 7) / 8);
+		// count the decoded symbols for the entropy figure
+		// (over segments of different alphabets the figure means
+		// nothing, so counting starts again)
+		if (freq == null || freq.length != codeTree.alphabetSize()) {
+			mixedAlphabets = freq != null;
+			freq = new int[codeTree.alphabetSize()];
+		}
+		// most bytes one symbol can add to the buffer
+		int maxExpansion = alphabet == null ? 1 : alphabet.maxExpansion();
+		// decoded bytes are collected here and written a buffer at a time
+		int bufLen = 0;
+		metrics.begin(CodecMetrics.Phase.DECODE);
+		// the node reached so far
+		int currentNode;
+		// declare the flag for finding a leaf node
+		boolean isleaf;
+
+		// with tANS the state gives each byte in turn
+		if (tans != null) {
+			if (fileSize > 0)
+				tans.start(bitr);
+			for (int i = 0; i < fileSize; i++) {
+				int b = tans.next(bitr);
+				if (b == -1)
+					fail(String.format("%s is truncated: %d of %d bytes decoded",
+							inputFilename, i, fileSize));
+				buf[bufLen++] = (byte) b;
+				freq[b]++;
+				if (bufLen == buf.length) {
+					flush(out, buf, bufLen);
+					bufLen = 0;
+				}
+			}
+		}
+		else {
+			// loop through until all the characters (symbols) have been decoded
 			for (int i = 0; i < fileSize; i++)
 			{
+				// switch to the table of the next group
+				if (tables != null && groupLeft-- == 0) {
+					codeTree = tables.tree(group++);
+					root = codeTree.root();
+					groupLeft = tables.groupSize() - 1;
+				}
+				// read the tree of the next plane, passing empty ones
+				if (header.hasPlanes() && groupLeft-- == 0) {
+					while (header.planeSize(group) == 0)
+						group++;
+					groupLeft = header.planeSize(group++) - 1;
+					codeTree = readTree(bitr);
+					root = codeTree.root();
+				}
 				// start at the root
 				currentNode = root;
 				isleaf = false;
@@ -78,155 +409,107 @@ public class HDecode {
 				{
 					// read bits from the compressed file
 					int bit = bitr.readBit();
-					// if end of file, bit reader returns -1, escape
-					if (bit == -1) return;
+					// if end of file, bit reader returns -1, the file is cut short
+					if (bit == -1)
+						fail(String.format("%s is truncated: %d of %d bytes decoded",
+								inputFilename, i, fileSize));
 
 					// if a 0, move down left	
 					if (bit == 0) {
-						currentNode = currentNode.lchild;
+						currentNode = codeTree.left(currentNode);
 					}
 					// if a 1, move down right
 					else if (bit == 1)
 					{
-						currentNode = currentNode.rchild;
+						currentNode = codeTree.right(currentNode);
 					}
 					// once at the leaf
-					if (currentNode.lchild == null && currentNode.rchild == null)
+					if (codeTree.isLeaf(currentNode))
 					{
 					// set leaf flag to true to signal next bit is for the next character
 					isleaf = true;
-					// write data value in leaf to output file
-					outF.write(currentNode.data);
+					// add data value in leaf to the output buffer
+					int b = codeTree.symbol(currentNode);
+					if (alphabet == null)
+						buf[bufLen++] = (byte) b;
+					else
+						bufLen = alphabet.expand(b, buf, bufLen);
+					freq[b]++;
+					if (bufLen > buf.length - maxExpansion) {
+						flush(out, buf, bufLen);
+						bufLen = 0;
+					}
 					}
 				}
 			}
-			
-			// close the files
-			bitr.close();
-			outF.close();
-		}
-		// catch exceptions
-		catch (FileNotFoundException e) {
-			System.out.printf("Error opening file %s\n", inputFilename);
-			System.exit(0);
 		}
-		catch (IOException e) { 
-			System.out.printf("IOException reading from: %s\n", inputFilename);
-			System.exit(0);
+		if (alphabet != null)
+			bufLen = alphabet.finish(buf, bufLen);
+		flush(out, buf, bufLen);
+		
+		metrics.end(CodecMetrics.Phase.DECODE, fileSize);
+		symbols += fileSize;
+		payloadBits += bitr.getBitCount() - headerBits;
+		// undo the transforms and write the original bytes
+		if (out != sink) {
+			metrics.begin(CodecMetrics.Phase.TRANSFORM);
+			byte[] decoded = ((ByteArrayOutputStream) out).toByteArray();
+			byte[] original = header.transforms.inverse(decoded);
+			crc.update(original);
+			sink.write(original);
+			// count the bytes written to the output, not those decoded
+			written += original.length - decoded.length;
+			metrics.end(CodecMetrics.Phase.TRANSFORM, original.length);
 		}
-	
+		// check the decoded bytes against the checksum in the header
+		if (header.hasChecksum() && (int) crc.getValue() != header.checksum)
+			fail(String.format("%s fails its checksum: expected %08x, got %08x",
+					inputFilename, header.checksum, (int) crc.getValue()));
 	}
-	
+
 	/*
-	*	readTree() - recursively reads the code tree from the file
-	*	uses the bit reader to construct and return the root of the tree
+	*	flush() - write the buffered bytes, adding them to the checksum
+	*	when no transforms are to be undone (otherwise the checksum is
+	*	of the bytes after the inverse transforms)
 	*/
 
-	public Node readTree(BitReader bitr)
+	private void flush(OutputStream out, byte[] buf, int len) throws IOException
 	{
-		// read the first bit
-		int bit = bitr.readBit();
-		// if a 0, we have a leaf
-		if (bit == 0)
-		{
-			// Initialize a new node
-			Node nNode = new Node();
-			// store the following 8 bits as a byte
-			byte nextByte = bitr.readByte();
-			// store the byte as data on the node
-			nNode.data = nextByte;
-			// return the node
-			return nNode;
-		}
-		else 
-		{
-			// read the left tree
-			Node lTree = readTree(bitr);
-			// read the right tree
-			Node rTree = readTree(bitr);
-			// Initialize a new node
-			Node nNode = new Node();
-			// set its children
-			nNode.lchild = lTree;
-			nNode.rchild = rTree;
-			// set the new node as parent to the left and right trees
-			lTree.parent = nNode;
-			rTree.parent = nNode;
-			// return the node
-			return nNode;
+		if (header.transforms.isEmpty())
+			crc.update(buf, 0, len);
+		out.write(buf, 0, len);
+		written += len;
+	}
+
+	/*
+	*	fail() - report a damaged input file, remove the partial
+	*	output file if this run created it and exit with status 1;
+	*	a file or device that was already there is left alone
+	*/
+
+	private void fail(String message)
+	{
+		System.out.println(message);
+		if (outF != null) {
+			try {
+				outF.close();
+			}
+			catch (IOException e) {
+				// nothing more to do; the file is removed below
+			}
+			Streams.removeCreated(newFileName, created);
 		}
+		System.exit(1);
 	}
 	
-	 /*
-     *    Node - an inner class to represent a node of
-     *           a Huffman Code Tree.
-     */
-	
-	public class Node implements Comparable<Node>
+	/*
+	*	readTree() - reads the code tree from the file
+	*	uses the bit reader to rebuild the tree's nodes
+	*/
+
+	public HuffmanTree readTree(BitReader bitr)
 	{
-		byte data;           // A byte of data - stored in an Integer.
-		Node lchild;         // Left child pointer.
-		Node rchild;         // Right child pointer.
-		Node parent;         // Pointer to parent node.
-		Integer frequency;   // Frequency the data within
-		                     // a file being encoded.
-		/*
-		 *   Basic node constructor.
-		 */
-		
-		public Node()
-		{
-			data = 0;          // Each Huffman Code Tree node
-			lchild = null;     // contains data, pointers to
-			rchild = null;     // children and parent nodes
-			parent = null;     // plus a frequency count
-			frequency = 0;     // associated with the data.
-		}
-		
-		
-		/*
-		 *   Constructor specifying all values
-		 *   of the node instance variables.
-		 */
-		
-		public Node(byte data, Node lchild, Node rchild,
-				               Node parent, int frequency)
-		{
-			this.data = data;
-			this.lchild = lchild;
-			this.rchild = rchild;
-			this.parent = parent;
-			this.frequency = frequency;
-		}
-		
-		
-		/*
-		 *    compareTo() - Compare two frequency values.  We want Nodes
-		 *                  with lower frequencies to have higher priority
-		 *                  in the priority queue.
-		 *                  
-		 */
-		
-		public int compareTo(Node other)
-		{
-			// if the old node is less
-			if (other.frequency > this.frequency) return 1;
-			else return 0;
-		}
-		
-		public String toString()
-		{
-			char ch = (char) this.data;
-			
-			String str = "byte: " + data + "  char: ";
-			
-			if (data > (byte) 31)
-				str = str + (char) data + "  freq: " + frequency;
-			else
-				str = str + " " + "  freq: " + frequency;
-			
-			return str;
-		}
-		
+		tree.read(bitr);
+		return tree;
 	}
 }
@@ -3,64 +3,246 @@
  */
 
 import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.zip.*;
 
 
 public class HEncode {
 
-	private Node root = null;               // Root of the Huffman Code Tree.
-
-	private Node[] leafPtr = new Node[256]; // Array of pointers to leaf nodes.
-	                                        // used to traverse up the code
-	                                        // tree during the encoding process.
+	private HuffmanTree tree = new HuffmanTree(256);  // The Huffman Code Tree.
 
 	private int[] freq = new int[256]; // Frequency of the bytes being encoded.
 	                                   //    used to build the initial trees
 	                                   //    in building the code tree.
 
-	private String inputFilename;   // The name of the file to encode.
+	private String inputFilename;   // The name of the file to encode,
+	                                //    "-" for standard input.
 
-	                  // pq is a priority queue of root nodes to trees.  It
-	                  // is used during the building of the code tree to
-	                  // select the roots with minimum frequency count.
+	private String outputFilename;  // The .huf file to write, "-" for
+	                                //    standard output.
 
-	private PriorityQueue<Node> pq = new PriorityQueue<Node>();
+	private TransformPipeline transforms = new TransformPipeline();
+	                                // Transforms run before coding.
 
-	                  // stk is a stack used to store the 0's and 1's
-	                  // of the code for a byte being encoded.  As a byte
-	                  // is being encoded, we travel from a leaf node, up
-	                  // the parent pointers to the root, pushing 0's and 1's
-	                  // as appropriate for the encoding.  When the root
-	                  // is reached, we pop the stack of "bits" into the
-	                  // output file.
+	private byte[] data = null;     // The transformed input, or null
+	                                //    when coding the file as is.
 
-	private Stack<Integer> stk = new Stack<Integer>();
+	private CRC32C crc = new CRC32C();  // Checksum of the input file,
+	                                    //    stored in the header.
 
 	private BitWriter bitw;   // Writes bits to the outputfile.
 
-	public final boolean DEBUG = true;
+	public boolean DEBUG = false;  // Print the frequencies, leaves and tree.
+
+	private CodecMetrics metrics;  // Phase timings and counts of the run.
+
+	private boolean pipelined = false;  // Read, code and write on
+	                                    //    separate threads.
+
+	private SymbolAlphabet alphabet = null;  // Symbols coded in place
+	                                         //    of bytes, if any.
+
+	private int tables = 0;   // Number of code tables, or 0 to
+	                          //    code with a single tree.
+
+	private int tableLog = 0;  // Size of the tANS table, as a power
+	                           //    of 2, or 0 to code with a tree.
+
+	private String appendTo = null;  // .huf file to add a segment to,
+	                                 //    or null to write a new file.
+
+	private SegmentIndex segments;   // Segments of appendTo.
 
 
 	public static void main(String[] args)
 			throws FileNotFoundException, IOException
 	{
-		if (args.length != 1) {
+		String chain = null;     // Optional transform chain, -t bwt,mtf,rle
+		TransformPipeline transforms = null;
+		boolean debug = false;   // -d  print the frequencies, leaves and tree.
+		boolean stats = false;   // -m  print the metrics of the run.
+		boolean estimate = false;  // --estimate  predict the size only.
+		boolean pipelined = false; // -p  overlap reading, coding and writing.
+		String symbols = null;   // -s 16|word[:N]  code larger symbols.
+		SymbolAlphabet alphabet = null;
+		String append = null;    // -a file.huf  add a segment to file.huf.
+		String output = null;    // -o file.huf  name the output, - for stdout.
+		int tables = 0;          // -n N  switch between N code tables.
+		int tableLog = 0;        // -e tans[:L]  code with tANS, 2^L slots.
+		boolean split = false;   // -b  split into blocks with their own trees.
+		int argi = 0;
+
+		while (argi < args.length - 1 && args[argi].startsWith("-")) {
+			if (args[argi].equals("-t") && argi + 2 < args.length) {
+				chain = args[++argi];
+				transforms = parseTransforms(chain);
+			} else if (args[argi].equals("-d"))
+				debug = true;
+			else if (args[argi].equals("-m"))
+				stats = true;
+			else if (args[argi].equals("--estimate"))
+				estimate = true;
+			else if (args[argi].equals("-p"))
+				pipelined = true;
+			else if (args[argi].equals("-s") && argi + 2 < args.length) {
+				symbols = args[++argi];
+				alphabet = parseAlphabet(symbols);
+			} else if (args[argi].equals("-a") && argi + 2 < args.length)
+				append = args[++argi];
+			else if (args[argi].equals("-o") && argi + 2 < args.length)
+				output = args[++argi];
+			else if (args[argi].equals("-n") && argi + 2 < args.length)
+				tables = Integer.parseInt(args[++argi]);
+			else if (args[argi].equals("-e") && argi + 2 < args.length)
+				tableLog = parseCoder(args[++argi]);
+			else if (args[argi].equals("-b"))
+				split = true;
+			else
+				break;
+			argi++;
+		}
+		if (args.length != argi + 1 || tableLog < 0 || (chain != null && transforms == null)
+				|| (symbols != null && alphabet == null)
+				|| (tables != 0 && (symbols != null
+				|| tables < CodeTables.MIN_TABLES || tables > CodeTables.MAX_TABLES))
+				|| (tableLog != 0 && (symbols != null || tables != 0))
+				|| (append != null && Streams.isStdio(append))
+				|| (estimate && (split || symbols != null || tables != 0 || tableLog != 0))
+				|| (split && (chain != null || symbols != null || tables != 0
+						|| tableLog != 0 || append != null))) {
 			System.out.println("Incorrect program argument");
 			System.exit(0);
 		}
 
-		HEncode coder = new HEncode(args[0]);  // Construct a Huffman Encoder
-
+		// Standard input (-) is coded to standard output unless -o is
+		// given, and then messages go to standard error.
+
+		if (output == null && Streams.isStdio(args[argi]))
+			output = Streams.STDIO;
+		if (output != null && Streams.isStdio(output) && append == null && !estimate)
+			Streams.useStderrForMessages();
+
+		HEncode coder = new HEncode(args[argi]);  // Construct a Huffman Encoder
+		coder.DEBUG = debug;
+		coder.setPipelined(pipelined);
+		coder.setAppendTo(append);
+		if (output != null)
+			coder.setOutput(output);
+		if (Streams.isStdio(args[argi]))
+			coder.readStdin();   // Standard input can only be read once.
+
+		if (chain != null) {
+			coder.setTransforms(transforms);
+			coder.transform();   // Run the transforms over the input.
+		}
+		if (estimate) {          // Print the predicted size, write nothing.
+			coder.estimate();
+			return;
+		}
+		if (split) {             // A segment for each block.
+			coder.encodeBlocks();
+			if (stats)
+				System.out.println(coder.getMetrics().snapshot());
+			return;
+		}
+		if (tables != 0) {       // Code with several tables.
+			coder.setTables(tables);
+			coder.encodeTables();
+			if (stats)
+				System.out.println(coder.getMetrics().snapshot());
+			return;
+		}
+		if (symbols != null) {   // Code 16-bit or word symbols.
+			coder.setAlphabet(alphabet);
+			coder.encodeSymbols();
+			if (stats)
+				System.out.println(coder.getMetrics().snapshot());
+			return;
+		}
 		coder.getFrequencies();  // Get the frequencies of bytes in inputfile.
 		if (coder.DEBUG)
 		    coder.showFreq();    // For debug - Let's see if we got the freqs.
+		if (tableLog != 0) {     // Code with tANS in place of the tree.
+			coder.setTableLog(tableLog);
+			coder.encodeTans();
+			if (stats)
+				System.out.println(coder.getMetrics().snapshot());
+			return;
+		}
+		if (coder.transforms.planes() > 1) {   // A tree for each byte plane.
+			coder.encodePlanes();
+			if (stats)
+				System.out.println(coder.getMetrics().snapshot());
+			return;
+		}
 		coder.getLeafPtrs();     // Get initial trees used to build code tree.
-		if (coder.DEBUG)         // For debug - print priority queue of roots.
-		    coder.showPQ();
+		if (coder.DEBUG)         // For debug - print the initial trees.
+		    coder.showLeaves();
 		coder.buildTree();       // Build the code tree.
 		if (coder.DEBUG)         // For debug - print the code tree.
 		    coder.printTree();
 		coder.encodeFile();      // Read the inputfile a second time, encoding
 		                         // the inputfile.
+		if (stats)
+			System.out.println(coder.getMetrics().snapshot());
+	}
+
+	/*
+	 *    parseTransforms() - The pipeline of a -t argument, or null
+	 *                        if it names an unknown stage or gives a
+	 *                        stage a parameter it cannot take.
+	 */
+
+	private static TransformPipeline parseTransforms(String spec)
+	{
+		try {
+			return TransformPipeline.parse(spec);
+		}
+		catch (IllegalArgumentException e) {   // Also a bad number.
+			return null;
+		}
+	}
+
+	/*
+	 *    parseAlphabet() - The alphabet of an -s argument, or null if
+	 *                      the mode is unknown or the dictionary size
+	 *                      is not a positive number.
+	 */
+
+	private static SymbolAlphabet parseAlphabet(String spec)
+	{
+		try {
+			return SymbolAlphabet.create(spec);
+		}
+		catch (IllegalArgumentException e) {   // Also a bad number.
+			return null;
+		}
+	}
+
+	/*
+	 *    parseCoder() - The tANS table size of an -e argument: "tans"
+	 *                   or "tans:L" for 2^L slots, or 0 for "huffman".
+	 *                   Returns -1 if the argument is not understood.
+	 */
+
+	private static int parseCoder(String spec)
+	{
+		if (spec.equals("huffman"))
+			return 0;
+		if (spec.equals("tans"))
+			return TansCoder.DEFAULT_TABLE_LOG;
+		if (spec.startsWith("tans:")) {
+			try {
+				int log = Integer.parseInt(spec.substring(5));
+				if (log >= 1 && log <= TansCoder.MAX_TABLE_LOG)
+					return log;
+			}
+			catch (NumberFormatException e) {
+				// fall through to the error
+			}
+		}
+		return -1;
 	}
 
 	/*
@@ -70,6 +252,147 @@ public class HEncode {
 	public HEncode(String inputFilename)
 	{
 		this.inputFilename = inputFilename;
+		this.outputFilename = inputFilename + ".huf";
+		this.metrics = new CodecMetrics("encode", inputFilename);
+	}
+
+	/*
+	 *    setOutput() - Name the .huf file, "-" for standard output.
+	 */
+
+	public void setOutput(String outputFilename)
+	{
+		this.outputFilename = outputFilename;
+	}
+
+	/*
+	 *    readStdin() - Read the whole of standard input.  The input is
+	 *                  read twice (to count and then to code), so it is
+	 *                  held in memory as the transformed input would be.
+	 */
+
+	public void readStdin()
+	{
+		try {
+			data = Streams.readAll(Streams.STDIO);
+		}
+		catch (IOException e) {
+			System.out.println("IOException reading from standard input");
+			System.exit(0);
+		}
+		crc.update(data);
+		metrics.setBytesIn(data.length);
+	}
+
+	/*
+	 *    getMetrics() - The timings and counts of this run.
+	 */
+
+	public CodecMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/*
+	 *    setTransforms() - Set the transforms to run over the input
+	 *                      before it is coded.
+	 */
+
+	public void setTransforms(TransformPipeline transforms)
+	{
+		this.transforms = transforms;
+	}
+
+	/*
+	 *    setPipelined() - When set, encodeFile() reads the input on a
+	 *                     reader thread and writes the .huf file on a
+	 *                     writer thread, passing buffers through rings
+	 *                     of recycled chunks, so I/O overlaps coding.
+	 */
+
+	public void setPipelined(boolean pipelined)
+	{
+		this.pipelined = pipelined;
+	}
+
+	/*
+	 *    setAlphabet() - Code symbols of the given alphabet in place
+	 *                    of bytes; see encodeSymbols().
+	 */
+
+	public void setAlphabet(SymbolAlphabet alphabet)
+	{
+		this.alphabet = alphabet;
+	}
+
+	/*
+	 *    setTables() - Code with the given number of code tables in
+	 *                  place of one tree; see encodeTables().
+	 */
+
+	public void setTables(int tables)
+	{
+		this.tables = tables;
+	}
+
+	/*
+	 *    setTableLog() - Code with a tANS table of 2^tableLog slots in
+	 *                    place of the tree; see encodeTans().
+	 */
+
+	public void setTableLog(int tableLog)
+	{
+		this.tableLog = tableLog;
+	}
+
+	/*
+	 *    setAppendTo() - Add the coded file as a new segment at the end
+	 *                    of the given .huf file (which is created if
+	 *                    need be) instead of writing inputfile.huf.
+	 *                    Only the new data is read and coded; see
+	 *                    SegmentIndex.
+	 */
+
+	public void setAppendTo(String appendTo)
+	{
+		this.appendTo = appendTo;
+	}
+
+	/*
+	 *    transform() - Read the whole input file and run the transforms
+	 *                  over it.  The frequency and encoding passes then
+	 *                  read the transformed bytes instead of the file.
+	 */
+
+	public void transform()
+	{
+		try {
+			metrics.begin(CodecMetrics.Phase.TRANSFORM);
+			byte[] original = data;       // Standard input, already read.
+			if (original == null) {
+				original = Streams.readAll(inputFilename);
+				crc.update(original);
+			}
+			data = transforms.forward(original);
+			metrics.end(CodecMetrics.Phase.TRANSFORM, original.length);
+			metrics.setBytesIn(original.length);
+		}
+		catch (IOException e) {
+			System.out.printf("IOException reading from: %s\n", inputFilename);
+			System.exit(0);
+		}
+	}
+
+	/*
+	 *    openInput() - Open the bytes to be coded: the transformed
+	 *                  input if there is one, otherwise the file.
+	 */
+
+	private InputStream openInput() throws IOException
+	{
+		if (data != null)
+			return new ByteArrayInputStream(data);
+		return Streams.openInput(inputFilename);
 	}
 
 
@@ -78,13 +401,17 @@ public class HEncode {
 	 *                      with which each byte (character) occurs.
 	 *
 	 *   The frequencies are stored in the array freq at the index
-	 *   location corresponding to the byte value 0 to 255.
+	 *   location corresponding to the byte value 0 to 255.  The
+	 *   checksum of the file is worked out on the same pass.
 	 */
 
 	public void getFrequencies()
 	{
-		FileInputStream inF;   // File object to read from.
-		int nextByte;          // Next byte from the file.
+		InputStream inF;       // File object to read from.
+		byte[] buf = new byte[1 << 16];   // Next bytes from the file.
+		int n;                 // Number of bytes in buf.
+
+		metrics.begin(CodecMetrics.Phase.FREQUENCY);
 
 		// Initialize the frequencies
 
@@ -92,13 +419,14 @@ public class HEncode {
 			freq[i] = 0;
 
 		try {
-		    inF = new FileInputStream(inputFilename);  // Open the input file.
+		    inF = openInput();            // Open the input file.
 
-		    do {
-		    	nextByte = inF.read();    // Read the next byte (-1 on EOF)
-		    	if (nextByte != -1)       //
-		    		freq[nextByte]++;     //    Increment frequency counter
-		    } while (nextByte != -1);     //    for the byte.
+		    while ((n = inF.read(buf)) != -1) {  // Read the next bytes (-1 on EOF)
+		    	for (int i = 0; i < n; i++)     //
+		    		freq[buf[i] & 0xff]++;      //    Increment frequency counter
+		    	if (data == null)               //    for each byte.
+		    		crc.update(buf, 0, n);
+		    }
 
 		    inF.close();                  //  Close the file.
 		}
@@ -110,6 +438,86 @@ public class HEncode {
 			System.out.printf("IOException reading from: %s\n", inputFilename);
 			System.exit(0);
 		}
+
+		long total = 0;
+		for (int i = 0; i < 256; i++)
+			total += freq[i];
+		metrics.end(CodecMetrics.Phase.FREQUENCY, total);
+		metrics.setEntropy(freq);
+		if (data == null)
+			metrics.setBytesIn(total);
+	}
+
+	/*
+	 *   estimate() - Predict the size of the .huf file without writing it.
+	 *
+	 *   The byte frequencies are counted in parallel over a memory
+	 *   mapped file (or over the transformed bytes) and the code tree
+	 *   is built from them as for encoding, so the payload size
+	 *   sum(freq * code length) and the header size are exact.  The
+	 *   order-0 entropy bound is printed alongside.  Output is one
+	 *   key=value pair per line.  It predicts the single tree coder,
+	 *   so main() refuses it with -b, -s, -n and -e.
+	 */
+
+	public void estimate()
+	{
+		long[] counts = null;
+
+		try {
+			counts = data != null ? FrequencyCounter.count(data)
+			                      : FrequencyCounter.count(inputFilename);
+		}
+		catch (IOException e) {
+			System.out.printf("IOException reading from: %s\n", inputFilename);
+			System.exit(0);
+		}
+
+		HuffmanTree t = new HuffmanTree(256);
+		t.build(counts);
+		t.makeCodes();
+
+		long symbols = 0;
+		long payloadBits = 0;
+		int distinct = 0;
+		for (int i = 0; i < 256; i++) {
+			symbols += counts[i];
+			payloadBits += counts[i] * t.length(i);
+			if (counts[i] > 0)
+				distinct++;
+		}
+
+		double entropyBits = 0.0;
+		for (int i = 0; i < 256; i++) {
+			if (counts[i] > 0)
+				entropyBits -= counts[i] * Math.log((double) counts[i] / symbols);
+		}
+		entropyBits /= Math.log(2.0);
+
+		HufHeader header = new HufHeader();   // As encodeFile() writes it.
+		header.setTransforms(transforms);
+		header.setChecksum(0);
+		long headerBits = header.sizeInBits() + t.treeBits();
+		long totalBytes = (headerBits + payloadBits + 7) / 8;
+		long inputBytes = data != null ? metrics.snapshot().bytesIn : symbols;
+
+		System.out.printf("file=%s\n", inputFilename);
+		System.out.printf("input_bytes=%d\n", inputBytes);
+		System.out.printf("symbols=%d\n", symbols);
+		System.out.printf("distinct_symbols=%d\n", distinct);
+		System.out.printf("header_bits=%d\n", headerBits);
+		System.out.printf("payload_bits=%d\n", payloadBits);
+		System.out.printf("compressed_bytes=%d\n", totalBytes);
+		System.out.printf("entropy_bits=%.0f\n", Math.ceil(entropyBits));
+		System.out.printf("entropy_bytes=%.0f\n", Math.ceil(entropyBits / 8));
+		System.out.printf("bits_per_symbol=%.4f\n",
+				symbols == 0 ? 0.0 : (double) payloadBits / symbols);
+		System.out.printf("entropy_bits_per_symbol=%.4f\n",
+				symbols == 0 ? 0.0 : entropyBits / symbols);
+		System.out.printf("ratio=%.4f\n",
+				inputBytes == 0 ? 0.0 : (double) totalBytes / inputBytes);
+		if (symbols > Integer.MAX_VALUE)
+			System.out.println("warning=too many symbols for one .huf file");
 	}
 
 	/*
@@ -129,65 +537,56 @@ public class HEncode {
 	}
 
 	/*
-	 *    getLeafPtrs() - Create root nodes containing the bytes.  These nodes
+	 *    getLeafPtrs() - Create leaf nodes containing the bytes.  These nodes
 	 *                    are the roots of the initial trees used to build the
 	 *                    code tree.  They will become the leaf nodes of the
 	 *                    Huffman Code tree.
 	 *
-	 *                    Enter the nodes in the priority queue of roots.
-	 *                    Nodes with smaller frequency have higher priority.
+	 *                    So that every byte gets a code of at least one bit,
+	 *                    a file with fewer than two distinct bytes is given
+	 *                    extra leaves of frequency 0.
 	 */
 
 	public void getLeafPtrs()
 	{
+		metrics.begin(CodecMetrics.Phase.TREE);
+		tree.reset();
 		// go through the 256 possible characters ( 8 bits, 0-255)
 		for (int i = 0; i < 256; i++) {
-			//if that character occurs once or more
-			if (freq[i] > 0) {
-				// initialize a new node
-				leafPtr[i] = new Node();
-				// assign the position from 0 - 255, ascii character encoding, as the leaf's data
-				leafPtr[i].data = (byte) i;
-				// assign frequency as the number of times that character appears
-				leafPtr[i].frequency = freq[i];
-				// enqueue the node on the priority queue
-				pq.enqueue(leafPtr[i]);
-			}
+			//if that character occurs once or more, make its leaf
+			if (freq[i] > 0)
+				tree.addLeaf(i, freq[i]);
 		}
+		tree.padLeaves();
+		metrics.end(CodecMetrics.Phase.TREE, 0);
 	}
 
-	public void showPQ()
+	/*
+	 *    showLeaves() - print the leaf nodes, the initial trees.
+	 */
+
+	public void showLeaves()
 	{
-		System.out.println(pq.toString());
+		for (int n = 0; n < tree.nodeCount(); n++) {
+			int b = tree.symbol(n);
+			System.out.printf("byte: %3d  char: %c  freq: %d\n",
+					b, b > 31 && b < 127 ? (char) b : ' ', tree.weight(n));
+		}
 	}
 
 	/*
 	 *    buildTree() - A function to build the Huffman Code Tree.
-	 *                  We start with a priority queue of the leaf nodes.
+	 *                  We start with the leaf nodes, join the two trees of
+	 *                  least frequency until one is left, then work out
+	 *                  the code of each byte.
 	 */
 
 	public void buildTree()
 	{
-		while (!pq.isEmpty()) {
-			// make a new node
-			Node nNode = new Node();
-			// the left child is the first node out, and its parent is the new node
-			Node leftChild = pq.dequeue();
-			leftChild.parent = nNode;
-			nNode.lchild = leftChild;
-			//again for right child, if there's another node in PQ - peek the front
-			if (pq.front() == null) return;
-			Node rightChild = pq.dequeue();
-			rightChild.parent = nNode;
-			nNode.rchild = rightChild;
-			// assign the frequency for the new node by adding left and right children's frequencies
-			Integer nFreq = leftChild.frequency + rightChild.frequency;
-			nNode.frequency = nFreq;
-			root = nNode;
-
-			// throw the new node back in the priority queue
-			pq.enqueue(nNode);
-		}
+		metrics.begin(CodecMetrics.Phase.TREE);
+		tree.combine();
+		tree.makeCodes();
+		metrics.end(CodecMetrics.Phase.TREE, 0);
 	}
 
 	/*
@@ -200,19 +599,32 @@ public class HEncode {
 
 	public void encodeFile()
 	{
-		FileInputStream inF;   // File object to read from.
-		byte nextByte;          // Next byte from the file.
-		bitw = new BitWriter(inputFilename + ".huf");
-		// write the number of characters in the file
-		bitw.writeInt(root.frequency);
+		InputStream inF;       // File object to read from.
+		int nextByte;          // Next byte from the file.
+		PipelinedInputStream pin = null;    // Reader thread, if pipelined.
+		PipelinedOutputStream pout = openOutput();
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		// write the header, ending in the number of characters in the file
+		HufHeader header = new HufHeader();
+		header.setTransforms(transforms);
+		header.setChecksum((int) crc.getValue());
+		int symbols = (int) tree.weight(tree.root());
+		header.symbolCount = symbols;
+		header.write(bitw);
 		// write the tree to the file for decoding
-		writeTree(root);
+		writeTree();
+		long headerBits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits + 7) / 8);
 		// encode bytes
+		metrics.begin(CodecMetrics.Phase.ENCODE);
 		try {
-		    inF = new FileInputStream(inputFilename);  // Open the input file.
+		    inF = openInput();            // Open the input file.
+		    if (pipelined && data == null)
+		    	inF = pin = new PipelinedInputStream(inF,
+		    			ChunkRing.DEFAULT_CHUNKS, ChunkRing.DEFAULT_CHUNK_SIZE);
 
 		    do {
-		    	nextByte = (byte) inF.read();    // Read the next byte (-1 on EOF)
+		    	nextByte = inF.read();    // Read the next byte (-1 on EOF)
 		    	if (nextByte != -1)       //
 		    		writeCode(nextByte);     //    write the byte to file
 		    } while (nextByte != -1);     //    for the byte.
@@ -227,178 +639,435 @@ public class HEncode {
 			System.exit(0);
 		}
 		// close and pad
-		bitw.close();
+		closeOutput();
+		long bits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.ENCODE, symbols);
+		metrics.setSymbols(symbols);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut((bits + 7) / 8);
+		if (pin != null)
+			metrics.addQueueStats(pin.stats());
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
 	}
 
 
 	/*
-	 *   writeCode() - A function to encode byte b.  The function
-	 *                 uses b as an index into the array of pointers
-	 *      to leaf nodes of the Huffman Code Tree.  Once at the leaf,
-	 *      parent pointers are used to climb to the root, pushing
-	 *      0's and 1's on a stack according to the encoding.  Once
-	 *      at the root, the o's and 1's on the stack are popped off
-	 *      and written to the outputfile using the bitWriter.
+	 *   openOutput() - Create the bit writer for the .huf file.  When
+	 *                  pipelined, the bytes go through a writer thread,
+	 *                  which is returned; otherwise null is returned.
+	 *
+	 *                  When appending, the writer starts at the end of
+	 *                  the last segment of the file, over its footer,
+	 *                  which is first saved to the journal (see
+	 *                  SegmentIndex).
 	 */
 
-	public void writeCode(byte b)
+	private PipelinedOutputStream openOutput()
 	{
-		// current node is the leaf node at that character
-		Node currentNode = leafPtr[b];
-		// while we aren't at the root
-		while(currentNode != root) {			
-			// push 0 onto stack if left child
-			if (currentNode.parent.lchild == currentNode) {
-				stk.push(0);
+		String outputFilename = appendTo != null ? appendTo : this.outputFilename;
+		OutputStream out = null;
+		PipelinedOutputStream pout = null;
+
+		try {
+			if (appendTo != null) {
+				SegmentIndex.recover(appendTo);
+				RandomAccessFile f = new RandomAccessFile(appendTo, "rw");
+				segments = SegmentIndex.read(f);
+				segments.beginAppend(appendTo, f);
+				f.seek(segments.dataEnd());
+				out = Channels.newOutputStream(f.getChannel());
 			}
-			// push 1 onto stack if right child
-			if (currentNode.parent.rchild == currentNode) {
-				stk.push(1);
+			else {
+				if (!Streams.isStdio(outputFilename))
+					SegmentIndex.endAppend(outputFilename);   // A stale journal.
+				out = Streams.openOutput(outputFilename);
 			}
-			// move up the tree
-			currentNode = currentNode.parent;
 		}
-		// once at root clear stack and write bits
-		while (!stk.isEmpty()) {
-			bitw.writeBit(stk.pop());
-		}	
-	}
+		catch (IOException e) {
+			System.out.printf("Error opening file %s\n", outputFilename);
+			System.exit(0);
+		}
 
+		if (pipelined) {
+			pout = new PipelinedOutputStream(out,
+					ChunkRing.DEFAULT_CHUNKS, ChunkRing.DEFAULT_CHUNK_SIZE);
+			bitw = new BitWriter(pout, outputFilename);
+		}
+		else
+			bitw = new BitWriter(Streams.buffered(out), outputFilename);
+		return pout;
+	}
 
 	/*
-	 *    writeTree() - A recursive function to write the Huffman
-	 *                  Code Tree to the output file.  The tree
-	 *       must be stored with the encoded file so that it can
-	 *       be used to decode the file.
+	 *   closeOutput() - Pad and close the .huf file.  When appending,
+	 *                   add the new segment to the footer, and drop
+	 *                   the journal once both are on disk.
 	 */
 
-
-	public void writeTree(Node root)
+	private void closeOutput()
 	{
-		// base case - we're done when we've reached the root
-		if (root == null) {
+		bitw.close();
+		if (appendTo == null)
 			return;
+
+		try (RandomAccessFile f = new RandomAccessFile(appendTo, "rw")) {
+			segments.add(segments.dataEnd(), (bitw.getBitCount() + 7) / 8);
+			segments.write(f);
+			f.getFD().sync();
+			SegmentIndex.endAppend(appendTo);
 		}
-		// if leaf node  (no children) write 0 and char as byte
-		else if (root.rchild == null && root.lchild == null) {
-			bitw.writeBit(0);
-			bitw.writeByte(root.data);
-		}
-		// write left and right trees
-		else {
-			bitw.writeBit(1);
-			writeTree(root.lchild);
-			writeTree(root.rchild);
+		catch (IOException e) {
+			System.out.printf("IOException writing to: %s\n", appendTo);
+			System.exit(0);
 		}
-
 	}
 
 	/*
-	 *   printTree() - Print the Huffman Code Tree to
-	 *                 standard output.
+	 *   encodeSymbols() - compresses the file using a symbol alphabet
+	 *   (16-bit symbols or dictionary words) in place of bytes.
+	 *
+	 *   The whole input is cut into symbols, their frequencies counted
+	 *   and a code tree built over the alphabet.  The tree is stored as
+	 *   canonical code lengths, which stay compact for alphabets of
+	 *   thousands of symbols, and the symbols are written with the
+	 *   canonical codes.
 	 */
 
-
-	public void printTree()
+	public void encodeSymbols()
 	{
-		rPrintTree(root,0);
+		byte[] input = data;
+
+		if (input == null) {
+			try {
+				input = Streams.readAll(inputFilename);
+			}
+			catch (IOException e) {
+				System.out.printf("IOException reading from: %s\n", inputFilename);
+				System.exit(0);
+			}
+			crc.update(input);
+			metrics.setBytesIn(input.length);
+		}
+
+		metrics.begin(CodecMetrics.Phase.FREQUENCY);
+		int[] symbols = alphabet.parse(input);
+		int[] symFreq = new int[alphabet.size()];
+		for (int s : symbols)
+			symFreq[s]++;
+		metrics.end(CodecMetrics.Phase.FREQUENCY, input.length);
+		metrics.setEntropy(symFreq);
+
+		metrics.begin(CodecMetrics.Phase.TREE);
+		HuffmanTree symTree = new HuffmanTree(alphabet.size());
+		symTree.build(symFreq);
+		symTree.makeCodes();
+		symTree.canonicalize();
+		metrics.end(CodecMetrics.Phase.TREE, 0);
+
+		PipelinedOutputStream pout = openOutput();
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		HufHeader header = new HufHeader();
+		header.setTransforms(transforms);
+		header.setChecksum((int) crc.getValue());
+		header.setAlphabet(alphabet);
+		header.symbolCount = symbols.length;
+		header.write(bitw);
+		symTree.writeLengths(bitw);
+		long headerBits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits + 7) / 8);
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		for (int s : symbols)
+			bitw.writeBits(symTree.code(s), symTree.length(s));
+		closeOutput();
+		long bits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.ENCODE, symbols.length);
+		metrics.setSymbols(symbols.length);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut((bits + 7) / 8);
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
 	}
 
 	/*
-	 *    rPrintTree() - the usual quick recursive method to print a tree.
+	 *   encodeBlocks() - compresses the file in blocks, each written as
+	 *   a segment with its own header, tree and checksum.
+	 *
+	 *   BlockSplitter places the block boundaries where a new tree
+	 *   saves more bits than it costs.  With more than one block the
+	 *   file ends in a SegmentIndex footer, as a file appended to
+	 *   with -a does, so HDecode needs nothing new to read it.
 	 */
 
-	public void rPrintTree(Node r, int level)
+	public void encodeBlocks()
 	{
+		byte[] input = data;
 
-		if (r == null)          // Empty tree.
-			return;
-
-		rPrintTree(r.rchild, level + 1);   // Print the right subtree.
+		if (input == null) {
+			try {
+				input = Streams.readAll(inputFilename);
+			}
+			catch (IOException e) {
+				System.out.printf("IOException reading from: %s\n", inputFilename);
+				System.exit(0);
+			}
+			metrics.setBytesIn(input.length);
+		}
 
-		for (int i = 0; i < level; i++)
-			System.out.print("         ");
+		metrics.begin(CodecMetrics.Phase.FREQUENCY);
+		int[] ends = BlockSplitter.split(input, input.length);
+		metrics.end(CodecMetrics.Phase.FREQUENCY, input.length);
+
+		PipelinedOutputStream pout = openOutput();
+		SegmentIndex index = new SegmentIndex();
+		long headerBits = 0;
+		int start = 0;
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		for (int end : ends) {
+			Arrays.fill(freq, 0);
+			for (int i = start; i < end; i++)
+				freq[input[i] & 0xff]++;
+			crc.reset();
+			crc.update(input, start, end - start);
+			tree.build(freq);
+			tree.makeCodes();
+
+			long segmentStart = bitw.getBitCount();
+			HufHeader header = new HufHeader();
+			header.setChecksum((int) crc.getValue());
+			header.symbolCount = end - start;
+			header.write(bitw);
+			writeTree();
+			headerBits += bitw.getBitCount() - segmentStart;
+			for (int i = start; i < end; i++)
+				writeCode(input[i] & 0xff);
+			bitw.alignToByte();
+			index.add(segmentStart / 8, (bitw.getBitCount() - segmentStart) / 8);
+			start = end;
+		}
+		long bits = bitw.getBitCount();
+		if (index.size() > 1) {
+			try {
+				for (byte b : index.footer())
+					bitw.writeByte(b);
+			}
+			catch (IOException e) {
+				System.out.printf("IOException writing to: %s\n", outputFilename);
+				System.exit(0);
+			}
+		}
+		closeOutput();
+		metrics.end(CodecMetrics.Phase.ENCODE, input.length);
+		metrics.setSymbols(input.length);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut(bitw.getBitCount() / 8);
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
+		if (DEBUG)
+			System.out.printf("%d blocks\n", ends.length);
+	}
 
-		if (r.data > (byte) 31)
-			System.out.printf("%c-%d\n", (char) r.data, r.frequency);
-		else
-			System.out.printf("%c-%d\n", '*', r.frequency);
+	/*
+	 *   encodeTables() - compresses the file with several code tables,
+	 *   switching between them every CodeTables.GROUP_SIZE bytes.
+	 *
+	 *   The whole input is read so the tables can be fitted to it, the
+	 *   table of each group is chosen, and the tables, the choices and
+	 *   the codes of the bytes are written after the header.
+	 */
 
-		rPrintTree(r.lchild, level + 1);
-	}
+	public void encodeTables()
+	{
+		byte[] input = data;
 
+		if (input == null) {
+			try {
+				input = Streams.readAll(inputFilename);
+			}
+			catch (IOException e) {
+				System.out.printf("IOException reading from: %s\n", inputFilename);
+				System.exit(0);
+			}
+			crc.update(input);
+			metrics.setBytesIn(input.length);
+		}
 
-    /*
-     *    Node - an inner class to represent a node of
-     *           a Huffman Code Tree.
-     */
+		metrics.begin(CodecMetrics.Phase.FREQUENCY);
+		for (byte b : input)
+			freq[b & 0xff]++;
+		metrics.end(CodecMetrics.Phase.FREQUENCY, input.length);
+		metrics.setEntropy(freq);
+
+		metrics.begin(CodecMetrics.Phase.TREE);
+		CodeTables codeTables = CodeTables.build(input, input.length,
+				tables, CodeTables.GROUP_SIZE);
+		metrics.end(CodecMetrics.Phase.TREE, 0);
+
+		PipelinedOutputStream pout = openOutput();
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		HufHeader header = new HufHeader();
+		header.setTransforms(transforms);
+		header.setChecksum((int) crc.getValue());
+		header.setTables(tables, CodeTables.GROUP_SIZE);
+		header.symbolCount = input.length;
+		header.write(bitw);
+		codeTables.write(bitw);
+		long headerBits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits + 7) / 8);
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		codeTables.encode(bitw, input, input.length);
+		closeOutput();
+		long bits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.ENCODE, input.length);
+		metrics.setSymbols(input.length);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut((bits + 7) / 8);
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
+	}
 
+	/*
+	 *   encodeTans() - compresses the file with a tANS coder built from
+	 *   the frequencies found by getFrequencies().
+	 *
+	 *   tANS codes the bytes from last to first, so the whole input is
+	 *   held in memory.
+	 */
 
-	private class Node implements Comparable<Node>
+	public void encodeTans()
 	{
-		byte data;           // A byte of data - stored in an Integer.
-		Node lchild;         // Left child pointer.
-		Node rchild;         // Right child pointer.
-		Node parent;         // Pointer to parent node.
-		Integer frequency;   // Frequency the data within
-		                     // a file being encoded.
-		/*
-		 *   Basic node constructor.
-		 */
+		byte[] input = data;
 
-		public Node()
-		{
-			data = 0;          // Each Huffman Code Tree node
-			lchild = null;     // contains data, pointers to
-			rchild = null;     // children and parent nodes
-			parent = null;     // plus a frequency count
-			frequency = 0;     // associated with the data.
+		if (input == null) {
+			try {
+				input = Streams.readAll(inputFilename);
+			}
+			catch (IOException e) {
+				System.out.printf("IOException reading from: %s\n", inputFilename);
+				System.exit(0);
+			}
 		}
 
+		metrics.begin(CodecMetrics.Phase.TREE);
+		TansCoder tans = TansCoder.build(freq, tableLog);
+		metrics.end(CodecMetrics.Phase.TREE, 0);
+
+		PipelinedOutputStream pout = openOutput();
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		HufHeader header = new HufHeader();
+		header.setTransforms(transforms);
+		header.setChecksum((int) crc.getValue());
+		header.setTans(tans.tableLog());
+		header.symbolCount = input.length;
+		header.write(bitw);
+		tans.write(bitw);
+		long headerBits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits + 7) / 8);
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		tans.encode(bitw, input, input.length);
+		closeOutput();
+		long bits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.ENCODE, input.length);
+		metrics.setSymbols(input.length);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut((bits + 7) / 8);
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
+	}
 
-		/*
-		 *   Constructor specifying all values
-		 *   of the node instance variables.
-		 */
+	/*
+	 *   encodePlanes() - compresses the output of a shuffle transform,
+	 *   coding each byte plane with its own tree.
+	 *
+	 *   The planes of numbers differ: the high bytes take few values
+	 *   and the low bytes many, so a tree for each codes them in fewer
+	 *   bits than one tree for all.  Each plane's tree is written just
+	 *   before its codes.
+	 */
 
-		public Node(byte data, Node lchild, Node rchild,
-				               Node parent, int frequency)
-		{
-			this.data = data;
-			this.lchild = lchild;
-			this.rchild = rchild;
-			this.parent = parent;
-			this.frequency = frequency;
+	public void encodePlanes()
+	{
+		PipelinedOutputStream pout = openOutput();
+		metrics.begin(CodecMetrics.Phase.HEADER);
+		HufHeader header = new HufHeader();
+		header.setTransforms(transforms);
+		header.setChecksum((int) crc.getValue());
+		header.setPlanes(transforms.planes());
+		header.symbolCount = data.length;
+		header.write(bitw);
+		long headerBits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.HEADER, (headerBits + 7) / 8);
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		int[] planeFreq = new int[256];
+		int start = 0;
+		for (int p = 0; p < header.planes; p++) {
+			int end = start + header.planeSize(p);
+			if (end == start)
+				continue;          // Empty planes have no tree.
+			Arrays.fill(planeFreq, 0);
+			for (int i = start; i < end; i++)
+				planeFreq[data[i] & 0xff]++;
+			tree.build(planeFreq);
+			tree.makeCodes();
+			tree.write(bitw);
+			for (int i = start; i < end; i++)
+				writeCode(data[i] & 0xff);
+			start = end;
 		}
+		closeOutput();
+		long bits = bitw.getBitCount();
+		metrics.end(CodecMetrics.Phase.ENCODE, data.length);
+		metrics.setSymbols(data.length);
+		metrics.setPayloadBits(bits - headerBits);
+		metrics.setBytesOut((bits + 7) / 8);
+		if (pout != null)
+			metrics.addQueueStats(pout.stats());
+		metrics.finish();
+	}
+
+	/*
+	 *   writeCode() - A function to encode byte b.  The code of each
+	 *                 byte was worked out by climbing from its leaf to
+	 *      the root when the tree was built, so here its bits are just
+	 *      written to the outputfile using the bitWriter.
+	 */
 
+	public void writeCode(int b)
+	{
+		bitw.writeBits(tree.code(b), tree.length(b));
+	}
 
-		/*
-		 *    compareTo() - Compare two frequency values.  We want Nodes
-		 *                  with lower frequencies to have higher priority
-		 *                  in the priority queue.
-		 *
-		 */
 
-		public int compareTo(Node other)
-		{
-			// if the old node is less
-	    if (other.frequency > this.frequency) return 1;
-			else return 0;
-		}
+	/*
+	 *    writeTree() - Write the Huffman Code Tree to the output
+	 *                  file.  The tree must be stored with the
+	 *       encoded file so that it can be used to decode the file.
+	 */
 
-		public String toString()
-		{
-			char ch = (char) this.data;
 
-			String str = "byte: " + data + "  char: ";
+	public void writeTree()
+	{
+		tree.write(bitw);
+	}
 
-			if (data > (byte) 31)
-				str = str + ch + "  freq: " + frequency;
-			else
-				str = str + " " + "  freq: " + frequency;
+	/*
+	 *   printTree() - Print the Huffman Code Tree to
+	 *                 standard output.
+	 */
 
-			return str;
-		}
 
+	public void printTree()
+	{
+		tree.print();
 	}
 }
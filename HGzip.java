@@ -0,0 +1,107 @@
+/*
+ *    class HGzip - A program to compress a file to the gzip format.
+ *
+ *    Usage:  java HGzip [-1 .. -9] [-m] [-o out.gz] file
+ *
+ *    The file is coded with DeflateEncoder, repeated strings as
+ *    LZ77 matches and the rest with Huffman codes, and written as
+ *    file.gz in the gzip format (RFC 1952), which gzip -d, zcat and
+ *    java.util.zip.GZIPInputStream read.  -1 is fastest, -9 codes
+ *    smallest; the default is -6.  - stands for standard input and
+ *    output, as for HEncode.  -m prints the metrics of the run.
+ */
+
+import java.io.*;
+import java.util.zip.*;
+
+public class HGzip {
+
+	private static final int ID1 = 0x1f;        // gzip magic number.
+	private static final int ID2 = 0x8b;
+	private static final int DEFLATE = 8;       // Compression method.
+	private static final int OS_UNIX = 3;
+
+	public static void main(String[] args)
+	{
+		int level = DeflateEncoder.DEFAULT_LEVEL;
+		boolean stats = false;
+		String output = null;
+		int argi = 0;
+
+		while (argi < args.length - 1 && args[argi].startsWith("-")) {
+			if (args[argi].matches("-[1-9]"))
+				level = args[argi].charAt(1) - '0';
+			else if (args[argi].equals("-m"))
+				stats = true;
+			else if (args[argi].equals("-o") && argi + 2 < args.length)
+				output = args[++argi];
+			else
+				break;
+			argi++;
+		}
+		if (args.length != argi + 1) {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+
+		String input = args[argi];
+		if (output == null)
+			output = Streams.isStdio(input) ? Streams.STDIO : input + ".gz";
+		if (Streams.isStdio(output))
+			Streams.useStderrForMessages();
+
+		CodecMetrics metrics = new CodecMetrics("encode", input);
+		byte[] data = null;
+		try {
+			data = Streams.readAll(input);
+		}
+		catch (IOException e) {
+			System.out.printf("Error opening file %s\n", input);
+			System.exit(0);
+		}
+		metrics.setBytesIn(data.length);
+
+		LsbBitWriter bitw = null;
+		try {
+			bitw = new LsbBitWriter(Streams.buffered(Streams.openOutput(output)), output);
+		}
+		catch (IOException e) {
+			System.out.printf("Error opening file %s\n", output);
+			System.exit(0);
+		}
+
+		metrics.begin(CodecMetrics.Phase.ENCODE);
+		compress(data, level, bitw);
+		bitw.close();
+		metrics.end(CodecMetrics.Phase.ENCODE, data.length);
+		metrics.setBytesOut(bitw.getBitCount() / 8);
+		metrics.finish();
+		if (stats)
+			System.out.println(metrics.snapshot());
+	}
+
+	/*
+	 *    compress() - write data as a gzip member: the header, the
+	 *                 DEFLATE stream, then the CRC-32 and length of
+	 *                 the data, low byte first.
+	 */
+
+	public static void compress(byte[] data, int level, LsbBitWriter bitw)
+	{
+		bitw.writeBits(ID1, 8);
+		bitw.writeBits(ID2, 8);
+		bitw.writeBits(DEFLATE, 8);
+		bitw.writeBits(0, 8);             // Flags: no name or comment.
+		bitw.writeBits(0, 32);            // No modification time.
+		bitw.writeBits(level == 9 ? 2 : level == 1 ? 4 : 0, 8);
+		bitw.writeBits(OS_UNIX, 8);
+
+		new DeflateEncoder(level).encode(data, 0, data.length, bitw);
+		bitw.alignToByte();
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		bitw.writeBits(crc.getValue(), 32);
+		bitw.writeBits(data.length, 32);
+	}
+}
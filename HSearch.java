@@ -0,0 +1,517 @@
+/*
+ *    class HSearch - A program to find a string in a .huf file
+ *                    without decompressing it.
+ *
+ *    Usage:  java HSearch [-c] pattern file.huf
+ *
+ *    Prints the offset in the uncompressed file of each match, one
+ *    per line, or with -c only the number of matches.
+ *
+ *    In a segment coded as plain bytes the pattern is turned into
+ *    the bits of its codes under the segment's tree, and those bits
+ *    are looked for in the raw coded bits with a Knuth-Morris-Pratt
+ *    automaton stepped a byte at a time, so nothing is decoded to
+ *    find them.  A run of matching bits is only a match if it starts
+ *    on a symbol boundary (the bits could also straddle the codes of
+ *    other bytes), so only then are the symbols up to it counted, by
+ *    table, to see whether one starts there.  Because the codes are
+ *    prefix free, a bit match that starts on a boundary is always the
+ *    pattern itself.
+ *
+ *    Segments written with transforms, a symbol alphabet, several
+ *    code tables or tANS do not hold one fixed code for the pattern,
+ *    so they are decoded with a CodecEngine and searched as bytes.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class HSearch {
+
+	private byte[] pattern;         // The bytes to look for.
+	private int m;                  // Length of the pattern.
+	private String filename;        // The .huf file searched.
+
+	private long base = 0;          // Uncompressed offset of the segment.
+	private long matches = 0;       // Number of matches found.
+	private boolean countOnly = false;   // Print the count, not offsets.
+
+	private byte[] carry;           // Last m-1 bytes before this segment,
+	private int carryLen = 0;       //    for matches across segments.
+	private byte[] head;            // First m-1 bytes of this segment.
+	private int headLen = 0;
+
+	private HuffmanTree tree = new HuffmanTree(256);
+	private HufHeader header = new HufHeader();
+
+	private static final int TABLE_BITS = 12;        // Bits decoded by table.
+	private static final int MAX_TABLE_STATES = 8192;   // Longest pattern, in
+	                                                    //    bits, run by byte.
+	private int[] table = new int[1 << TABLE_BITS];
+	private int[] runs = new int[1 << TABLE_BITS];
+	private ByteBuffer seg;         // The segment being scanned, mapped.
+	private int count;              // Its number of bytes.
+	private long symPos;            // Bit where the next symbol starts,
+	private long symIndex;          //    and its number.
+	private byte[] recent;          // Last m symbols decoded, symbol i at i % m.
+
+
+	public static void main(String[] args)
+	{
+		boolean count = false;
+		int argi = 0;
+
+		if (args.length > 0 && args[0].equals("-c")) {
+			count = true;
+			argi++;
+		}
+		if (args.length != argi + 2 || args[argi].isEmpty()) {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+
+		HSearch search = new HSearch(
+				args[argi].getBytes(StandardCharsets.UTF_8), args[argi + 1]);
+		search.countOnly = count;
+		search.search();
+		if (count)
+			System.out.println(search.matches);
+	}
+
+	/*
+	 *    Constructor - The pattern and the name of the file to search.
+	 */
+
+	public HSearch(byte[] pattern, String filename)
+	{
+		this.pattern = pattern;
+		this.m = pattern.length;
+		this.filename = filename;
+		carry = new byte[m];
+		head = new byte[m];
+		recent = new byte[m];
+	}
+
+	/*
+	 *    search() - Search each segment of the file in turn.
+	 */
+
+	public void search()
+	{
+		try {
+			SegmentIndex.recover(filename);   // An unfinished append.
+		}
+		catch (IOException e) {
+			System.out.printf("IOException writing to: %s\n", filename);
+			System.exit(0);
+		}
+
+		try (RandomAccessFile f = new RandomAccessFile(filename, "r")) {
+			SegmentIndex index = SegmentIndex.read(f);
+			FileChannel ch = f.getChannel();
+
+			for (int i = 0; i < index.size(); i++) {
+				headLen = 0;
+				ch.position(index.offset(i));
+				BitReader bitr = new BitReader(new BufferedInputStream(
+						Channels.newInputStream(ch), 1 << 16), filename);
+				header.readFrom(bitr);
+
+				long length;
+				if (header.alphabet == null && header.transforms.isEmpty()
+						&& !header.hasTables() && !header.hasTans() && !header.hasPlanes())
+					length = scanBits(bitr, ch, index.offset(i), index.length(i),
+							i == index.size() - 1);
+				else
+					length = scanDecoded(ch, index.offset(i), index.length(i));
+				base += length;
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.out.printf("Error opening file %s\n", filename);
+			System.exit(0);
+		}
+		catch (IOException e) {
+			System.out.printf("IOException reading from: %s\n", filename);
+			System.exit(0);
+		}
+		catch (RuntimeException | DataFormatException e) {
+			System.out.printf("%s is corrupt: %s\n", filename, e);
+			System.exit(1);
+		}
+	}
+
+	/*
+	 *    scanBits() - Search the coded bits of a segment of bytes,
+	 *                 whose header has been read.  Returns the number
+	 *                 of bytes the segment decodes to.
+	 *
+	 *    The segment is mapped and the automaton of the pattern's bits
+	 *    is run over its raw coded bits a byte at a time, through
+	 *    tables of the state and the matches after each byte.  Each
+	 *    run of matching bits is then checked: the segment is decoded,
+	 *    as code lengths only and a symbol per table lookup, from the
+	 *    last check up to the run's start, which is a match if a
+	 *    symbol starts there.  The symbols counted give its offset.
+	 *    Past the last run, only a segment with another after it is
+	 *    decoded to the end, for its last m-1 bytes.
+	 */
+
+	private long scanBits(BitReader bitr, FileChannel ch, long offset, long length,
+			boolean last) throws IOException, DataFormatException
+	{
+		if (length > Integer.MAX_VALUE)
+			throw new DataFormatException("segment too large to search");
+		tree.read(bitr);
+		tree.makeCodes();
+		long start = bitr.getBitCount();
+		seg = ch.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		count = header.symbolCount;
+		if (count > 0) {
+			if (tree.isLeaf(tree.root()))
+				throw new DataFormatException("bad code tree");
+			makeTable();
+		}
+
+		// The first m-1 bytes, for matches from the segment before.
+
+		symPos = start;
+		symIndex = 0;
+		while (symIndex < Math.min(count, m - 1))
+			head[headLen++] = (byte) nextSymbol();
+		joinSegments();
+		symPos = start;
+		symIndex = 0;
+
+		// The bits of the pattern's codes.  A byte with no code does
+		// not occur in the segment, so neither does the pattern.
+
+		int bitLen = 0;
+		boolean possible = count > 0;
+		for (int i = 0; i < m && possible; i++) {
+			possible = tree.length(pattern[i] & 0xff) > 0;
+			bitLen += tree.length(pattern[i] & 0xff);
+		}
+		if (possible) {
+			int[] bits = new int[bitLen];
+			int k = 0;
+			for (int i = 0; i < m; i++) {
+				int b = pattern[i] & 0xff;
+				long code = tree.code(b);
+				for (int j = tree.length(b) - 1; j >= 0; j--)
+					bits[k++] = (int) (code >>> j) & 1;
+			}
+			scanRaw(automaton(bits, 2), bitLen, start);
+		}
+
+		// The last m-1 bytes, for matches into the segment after.
+
+		if (!last) {
+			skipTo(Long.MAX_VALUE, count - Math.min(count, m - 1));
+			while (symIndex < count)
+				nextSymbol();
+			int t = (int) Math.min(count, m - 1);
+			byte[] tail = new byte[t];
+			for (int j = 0; j < t; j++)
+				tail[j] = recent[(int) ((count - t + j) % m)];
+			keepCarry(tail, count);
+		}
+		seg = null;
+		return count;
+	}
+
+	/*
+	 *    scanRaw() - Run the automaton of a pattern of bitLen bits over
+	 *                the coded bits from start, checking each run of
+	 *                matching bits.
+	 */
+
+	private void scanRaw(int[][] next, int bitLen, long start)
+	{
+		long end = 8L * seg.limit();
+		long pos = start;
+		int state = 0;
+
+		// Up to a byte boundary, and for a pattern too long for the
+		// byte tables, a bit at a time.
+
+		boolean byBytes = bitLen < MAX_TABLE_STATES;
+		while (pos < end && (!byBytes || (pos & 7) != 0)) {
+			state = next[state][bit(pos++)];
+			if (state == bitLen)
+				check(pos - bitLen);
+		}
+		if (pos == end)
+			return;
+
+		int[] step = new int[(bitLen + 1) << 8];       // State after a byte,
+		byte[] ends = new byte[(bitLen + 1) << 8];     //    and the bits of it
+		for (int s = 0; s <= bitLen; s++) {            //    that end a match.
+			for (int b = 0; b < 256; b++) {
+				int t = s;
+				int hit = 0;
+				for (int k = 0; k < 8; k++) {
+					t = next[t][(b >>> (7 - k)) & 1];
+					if (t == bitLen)
+						hit |= 1 << k;
+				}
+				step[s << 8 | b] = t;
+				ends[s << 8 | b] = (byte) hit;
+			}
+		}
+
+		for (int i = (int) (pos >>> 3); i < seg.limit(); i++) {
+			int x = state << 8 | seg.get(i) & 0xff;
+			int hit = ends[x] & 0xff;
+			for (int k = 0; hit != 0; k++, hit >>>= 1)
+				if ((hit & 1) != 0)
+					check(8L * i + k + 1 - bitLen);
+			state = step[x];
+		}
+	}
+
+	/*
+	 *    check() - Report a match if a symbol starts at bit pos, which
+	 *              is at or after the last position checked.
+	 */
+
+	private void check(long pos)
+	{
+		skipTo(pos, count);
+		if (symPos == pos && symIndex + m <= count)
+			found(base + symIndex);
+	}
+
+	/*
+	 *    skipTo() - Move on to the first symbol starting at or after
+	 *               bit pos, or to symbol limit if that comes first.
+	 *               The symbols skipped are counted, a TABLE_BITS run
+	 *               of whole codes at a time where they all fit.
+	 */
+
+	private void skipTo(long pos, long limit)
+	{
+		while (symPos < pos && symIndex < limit) {
+			int e = runs[peek(symPos)];
+			int bits = e & 0xffff;
+			int k = e >>> 16;
+			if (k > 0 && symPos + bits <= pos && symIndex + k <= limit) {
+				symPos += bits;
+				symIndex += k;
+			}
+			else
+				nextSymbol();
+		}
+		if (symPos > 8L * seg.limit())
+			throw new IllegalStateException("truncated after "
+					+ symIndex + " of " + count + " bytes");
+	}
+
+	/*
+	 *    nextSymbol() - Decode the symbol starting at symPos, moving on
+	 *                   past it, and keep it among the recent ones.
+	 */
+
+	private int nextSymbol()
+	{
+		int e = table[peek(symPos)];
+		int len;
+		int symbol;
+		if (e >= 0) {
+			len = e >>> 8;
+			symbol = e & 0xff;
+		}
+		else {                           // A code longer than the table.
+			int n = -1 - e;
+			len = TABLE_BITS;
+			while (!tree.isLeaf(n)) {
+				n = bit(symPos + len) == 0 ? tree.left(n) : tree.right(n);
+				len++;
+			}
+			symbol = tree.symbol(n);
+		}
+		symPos += len;
+		if (symPos > 8L * seg.limit())
+			throw new IllegalStateException("truncated after "
+					+ symIndex + " of " + count + " bytes");
+		recent[(int) (symIndex++ % m)] = (byte) symbol;
+		return symbol;
+	}
+
+	/*
+	 *    makeTable() - For each TABLE_BITS bit value, the length << 8 |
+	 *                  symbol of the code it starts with, or -1 - node
+	 *                  for a longer code, and the run of codes in it.
+	 */
+
+	private void makeTable()
+	{
+		int root = tree.root();
+		for (int v = 0; v < 1 << TABLE_BITS; v++) {
+			int n = root;
+			int len = 0;
+			while (!tree.isLeaf(n) && len < TABLE_BITS) {
+				n = ((v >>> (TABLE_BITS - 1 - len)) & 1) == 0 ? tree.left(n) : tree.right(n);
+				len++;
+			}
+			table[v] = tree.isLeaf(n) ? len << 8 | tree.symbol(n) : -1 - n;
+		}
+
+		// runs: the number << 16 | bits of the whole codes that
+		// follow one another in each TABLE_BITS bit value.
+
+		for (int v = 0; v < 1 << TABLE_BITS; v++) {
+			int used = 0;
+			int k = 0;
+			int e;
+			while ((e = table[(v << used) & ((1 << TABLE_BITS) - 1)]) >= 0
+					&& used + (e >>> 8) <= TABLE_BITS) {
+				used += e >>> 8;
+				k++;
+			}
+			runs[v] = k << 16 | used;
+		}
+	}
+
+	/*
+	 *    peek() - The TABLE_BITS bits of the segment from bit pos, with
+	 *             0 bits past its end.
+	 */
+
+	private int peek(long pos)
+	{
+		int i = (int) (pos >>> 3);
+		int word = 0;
+		for (int k = 0; k < 3; k++)
+			word = word << 8 | (i + k < seg.limit() ? seg.get(i + k) & 0xff : 0);
+		return (word >>> (24 - TABLE_BITS - (int) (pos & 7))) & ((1 << TABLE_BITS) - 1);
+	}
+
+	private int bit(long pos)
+	{
+		int i = (int) (pos >>> 3);
+		if (i >= seg.limit())
+			return 0;
+		return (seg.get(i) >>> (7 - (int) (pos & 7))) & 1;
+	}
+
+	/*
+	 *    scanDecoded() - Decode a segment written with transforms or a
+	 *                    symbol alphabet and search its bytes.
+	 */
+
+	private long scanDecoded(FileChannel ch, long offset, long length)
+			throws IOException, DataFormatException
+	{
+		if (length > Integer.MAX_VALUE)
+			throw new DataFormatException("segment too large to decode");
+		ByteBuffer bytes = ByteBuffer.allocate((int) length);
+		while (bytes.hasRemaining()
+				&& ch.read(bytes, offset + bytes.position()) != -1)
+			;
+
+		CodecEngine engine = CodecEngine.forThread();
+		int n = engine.decode(bytes.array(), 0, bytes.position());
+		byte[] data = engine.output();
+
+		headLen = Math.min(n, m - 1);
+		System.arraycopy(data, 0, head, 0, headLen);
+		joinSegments();
+
+		int[][] next = automaton(toInts(pattern), 256);
+		int state = 0;
+		for (int i = 0; i < n; i++) {
+			state = next[state][data[i] & 0xff];
+			if (state == m)
+				found(base + i - m + 1);
+		}
+
+		keepCarry(Arrays.copyOfRange(data, n - Math.min(n, m - 1), n), n);
+		return n;
+	}
+
+	/*
+	 *    joinSegments() - Find the matches that begin in the bytes
+	 *                     before this segment and end in its first
+	 *                     m-1 bytes, held in head.
+	 */
+
+	private void joinSegments()
+	{
+		byte[] joined = new byte[carryLen + headLen];
+		System.arraycopy(carry, 0, joined, 0, carryLen);
+		System.arraycopy(head, 0, joined, carryLen, headLen);
+
+		for (int s = 0; s < carryLen && s + m <= joined.length; s++) {
+			int j = 0;
+			while (j < m && joined[s + j] == pattern[j])
+				j++;
+			if (j == m)
+				found(base - carryLen + s);
+		}
+	}
+
+	/*
+	 *    keepCarry() - Keep the last m-1 bytes seen, given the last
+	 *                  bytes of a segment that is length bytes long.
+	 */
+
+	private void keepCarry(byte[] last, long length)
+	{
+		byte[] all = last;
+		if (length < m - 1) {             // Some of the old carry stays.
+			all = new byte[carryLen + last.length];
+			System.arraycopy(carry, 0, all, 0, carryLen);
+			System.arraycopy(last, 0, all, carryLen, last.length);
+		}
+		carryLen = Math.min(all.length, m - 1);
+		System.arraycopy(all, all.length - carryLen, carry, 0, carryLen);
+	}
+
+	/*
+	 *    automaton() - The Knuth-Morris-Pratt automaton of a pattern
+	 *                  over an alphabet of the given size.  State s
+	 *                  means the last s symbols matched the start of
+	 *                  the pattern; reaching pat.length is a match.
+	 */
+
+	private static int[][] automaton(int[] pat, int alphabet)
+	{
+		int[][] next = new int[pat.length + 1][alphabet];
+		int fallback = 0;       // State reached by the pattern less its
+		                        //    first symbol.
+		for (int s = 0; s <= pat.length; s++) {
+			for (int c = 0; c < alphabet; c++)
+				next[s][c] = s > 0 ? next[fallback][c] : 0;
+			if (s < pat.length) {
+				next[s][pat[s]] = s + 1;
+				if (s > 0)
+					fallback = next[fallback][pat[s]];
+			}
+		}
+		return next;
+	}
+
+	private static int[] toInts(byte[] bytes)
+	{
+		int[] ints = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++)
+			ints[i] = bytes[i] & 0xff;
+		return ints;
+	}
+
+	/*
+	 *    found() - Report a match at the given uncompressed offset.
+	 */
+
+	private void found(long offset)
+	{
+		matches++;
+		if (!countOnly)
+			System.out.println(offset);
+	}
+}
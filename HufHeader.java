@@ -0,0 +1,281 @@
+/*
+ *    class HufHeader
+ *
+ *    The header at the start of a .huf file.
+ *
+ *    The original format starts with a 32-bit count of the bytes
+ *    in the file, followed by the code tree.  Since that count is
+ *    never negative, an extended header is marked by the negative
+ *    value MAGIC in the first 32 bits:
+ *
+ *        32 bits  - MAGIC
+ *         8 bits  - flags
+ *                   (FLAG_TRANSFORMS) transform chain
+ *        32 bits  - (FLAG_CRC32C) CRC32C of the original bytes
+ *        8+ bits  - (FLAG_SYMBOLS) symbol alphabet mode and parameters
+ *         8 bits  - (FLAG_TABLES) number of code tables
+ *        16 bits  - (FLAG_TABLES) symbols per group
+ *         8 bits  - (FLAG_TANS) log2 of the tANS table size
+ *         8 bits  - (FLAG_PLANES) number of byte planes
+ *        32 bits  - count of symbols coded
+ *
+ *    followed by the code tree and the coded bits as before.  A file
+ *    with no flags set is written in the original format.  With
+ *    FLAG_SYMBOLS the count is of alphabet symbols rather than bytes
+ *    and the tree is stored as canonical code lengths.  With
+ *    FLAG_TABLES the single tree is replaced by several code tables
+ *    and the table of each group of symbols (see CodeTables).  With
+ *    FLAG_TANS the bytes are coded with a TansCoder, not a tree.
+ *    With FLAG_PLANES the bytes are cut into planes (see planeSize())
+ *    and each plane is written as its own tree and codes, one plane
+ *    after another; the transform chain then ends in a shuffle.
+ */
+
+public class HufHeader
+{
+	public static final int MAGIC = 0x9E485546;   // 0x9E 'H' 'U' 'F'
+
+	public static final int FLAG_TRANSFORMS = 0x01;
+	public static final int FLAG_CRC32C = 0x02;
+	public static final int FLAG_SYMBOLS = 0x04;
+	public static final int FLAG_TABLES = 0x08;
+	public static final int FLAG_TANS = 0x10;
+	public static final int FLAG_PLANES = 0x20;
+
+	public int flags = 0;            // Which optional fields are present.
+	public TransformPipeline transforms = new TransformPipeline();
+	public int checksum = 0;         // CRC32C of the uncompressed file.
+	public SymbolAlphabet alphabet = null;   // Symbols coded, null
+	                                         //    for bytes.
+	public int tables = 0;           // Number of code tables, 0
+	                                 //    for a single tree.
+	public int groupSize = 0;        // Symbols per table group.
+	public int tableLog = 0;         // tANS table size, as a power of 2.
+	public int planes = 0;           // Byte planes, each with its own tree.
+	public int symbolCount = 0;      // Number of symbols coded.
+
+	/*
+	 *   setTransforms() - record the transform chain, setting
+	 *                     or clearing the flag as needed.
+	 */
+
+	public void setTransforms(TransformPipeline transforms)
+	{
+		this.transforms = transforms;
+		if (transforms.isEmpty())
+			flags &= ~FLAG_TRANSFORMS;
+		else
+			flags |= FLAG_TRANSFORMS;
+	}
+
+	/*
+	 *   setChecksum() - record the CRC32C of the uncompressed file.
+	 */
+
+	public void setChecksum(int checksum)
+	{
+		this.checksum = checksum;
+		flags |= FLAG_CRC32C;
+	}
+
+	/*
+	 *   setAlphabet() - record the symbol alphabet, null for bytes.
+	 */
+
+	public void setAlphabet(SymbolAlphabet alphabet)
+	{
+		this.alphabet = alphabet;
+		if (alphabet == null)
+			flags &= ~FLAG_SYMBOLS;
+		else
+			flags |= FLAG_SYMBOLS;
+	}
+
+	/*
+	 *   setTables() - code with several tables, switched every
+	 *                 groupSize symbols.
+	 */
+
+	public void setTables(int tables, int groupSize)
+	{
+		this.tables = tables;
+		this.groupSize = groupSize;
+		flags |= FLAG_TABLES;
+	}
+
+	public boolean hasTables()
+	{
+		return (flags & FLAG_TABLES) != 0;
+	}
+
+	/*
+	 *   setTans() - code with tANS in place of a Huffman tree.
+	 */
+
+	public void setTans(int tableLog)
+	{
+		this.tableLog = tableLog;
+		flags |= FLAG_TANS;
+	}
+
+	public boolean hasTans()
+	{
+		return (flags & FLAG_TANS) != 0;
+	}
+
+	/*
+	 *   setPlanes() - code each of the given number of byte planes
+	 *                 with its own tree.
+	 */
+
+	public void setPlanes(int planes)
+	{
+		this.planes = planes;
+		flags |= FLAG_PLANES;
+	}
+
+	public boolean hasPlanes()
+	{
+		return (flags & FLAG_PLANES) != 0;
+	}
+
+	/*
+	 *   planeSize() - the number of symbols in plane p.  Every plane
+	 *                 holds symbolCount / planes symbols but the last,
+	 *                 which also holds the rest, as ShuffleTransform
+	 *                 lays them out.
+	 */
+
+	public int planeSize(int p)
+	{
+		int size = symbolCount / planes;
+		return p < planes - 1 ? size : symbolCount - (planes - 1) * size;
+	}
+
+	public boolean hasChecksum()
+	{
+		return (flags & FLAG_CRC32C) != 0;
+	}
+
+	public boolean isLegacy()
+	{
+		return flags == 0;
+	}
+
+	/*
+	 *   write() - write the header to the .huf file.
+	 */
+
+	public void write(BitWriter bitw)
+	{
+		if (!isLegacy()) {
+			bitw.writeInt(MAGIC);
+			bitw.writeByte(flags);
+			if ((flags & FLAG_TRANSFORMS) != 0)
+				transforms.write(bitw);
+			if ((flags & FLAG_CRC32C) != 0)
+				bitw.writeInt(checksum);
+			if ((flags & FLAG_SYMBOLS) != 0) {
+				bitw.writeByte(alphabet.mode());
+				alphabet.writeParams(bitw);
+			}
+			if ((flags & FLAG_TABLES) != 0) {
+				bitw.writeByte(tables);
+				bitw.writeBits(groupSize, 16);
+			}
+			if ((flags & FLAG_TANS) != 0)
+				bitw.writeByte(tableLog);
+			if ((flags & FLAG_PLANES) != 0)
+				bitw.writeByte(planes);
+		}
+		bitw.writeInt(symbolCount);
+	}
+
+	/*
+	 *   sizeInBits() - the number of bits write() will write, for
+	 *                  a header without a symbol alphabet.
+	 */
+
+	public int sizeInBits()
+	{
+		int bits = 32;
+		if (!isLegacy()) {
+			bits += 32 + 8;
+			if ((flags & FLAG_TRANSFORMS) != 0)
+				bits += 8 + 16 * transforms.size();
+			if ((flags & FLAG_CRC32C) != 0)
+				bits += 32;
+			if ((flags & FLAG_TABLES) != 0)
+				bits += 24;
+			if ((flags & FLAG_TANS) != 0)
+				bits += 8;
+			if ((flags & FLAG_PLANES) != 0)
+				bits += 8;
+		}
+		return bits;
+	}
+
+	/*
+	 *   read() - read the header from the start of a .huf file.
+	 */
+
+	public static HufHeader read(BitReader bitr)
+	{
+		HufHeader header = new HufHeader();
+		header.readFrom(bitr);
+		return header;
+	}
+
+	/*
+	 *   readFrom() - read a header into this object, so a coder can
+	 *                reuse one header for many files.
+	 */
+
+	public void readFrom(BitReader bitr)
+	{
+		readFrom(bitr, bitr.readInt());
+	}
+
+	/*
+	 *   readFrom() - read a header whose first 32 bits have already
+	 *                been read, as when looking for the next segment.
+	 */
+
+	public void readFrom(BitReader bitr, int first)
+	{
+		flags = 0;
+		checksum = 0;
+		alphabet = null;
+		tables = 0;
+		groupSize = 0;
+		tableLog = 0;
+		planes = 0;
+		if (!transforms.isEmpty())
+			transforms = new TransformPipeline();
+
+		if (first != MAGIC) {            // Original format.
+			symbolCount = first;
+			return;
+		}
+
+		flags = bitr.readByte() & 0xff;
+		if ((flags & FLAG_TRANSFORMS) != 0)
+			transforms = TransformPipeline.read(bitr);
+		if ((flags & FLAG_CRC32C) != 0)
+			checksum = bitr.readInt();
+		if ((flags & FLAG_SYMBOLS) != 0)
+			alphabet = SymbolAlphabet.read(bitr);
+		if ((flags & FLAG_TABLES) != 0) {
+			tables = bitr.readByte() & 0xff;
+			groupSize = (int) bitr.readBits(16);
+		}
+		if ((flags & FLAG_TANS) != 0)
+			tableLog = bitr.readByte() & 0xff;
+		if ((flags & FLAG_PLANES) != 0) {
+			planes = bitr.readByte() & 0xff;
+			if (planes < 1)
+				throw new IllegalStateException("Bad plane count");
+		}
+		symbolCount = bitr.readInt();
+	}
+}
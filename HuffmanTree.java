@@ -0,0 +1,587 @@
+/*
+ *    class HuffmanTree
+ *
+ *    A Huffman Code Tree shared by the encoder and the decoder.
+ *
+ *    Rather than one object per node, the nodes are stored in
+ *    parallel arrays indexed by node number:
+ *
+ *        left[n], right[n]  - children, or NONE at a leaf
+ *        parent[n]          - parent, or NONE at the root
+ *        symbol[n]          - the symbol at a leaf
+ *        weight[n]          - frequency of the subtree
+ *
+ *    A tree over an alphabet of k symbols has at most 2k - 1 nodes,
+ *    so the arrays are allocated once, when the tree is constructed,
+ *    whatever the alphabet size, and reused by reset().
+ *
+ *    After makeCodes(), code(s) and length(s) give the code of
+ *    symbol s: its bits are the low length(s) bits of code(s),
+ *    written most significant bit first.
+ *
+ *    For large alphabets the tree is stored as canonical code
+ *    lengths instead of node by node (see writeLengths()); only the
+ *    length of each symbol is kept and the codes are assigned in
+ *    order of length, then symbol, so the decoder can rebuild them.
+ */
+
+public class HuffmanTree
+{
+	public static final int NONE = -1;   // No node.
+
+	private int alphabetSize;   // Symbols are 0 .. alphabetSize-1.
+	private int nodeCount = 0;  // Nodes in use.
+	private int root = NONE;    // Root of the tree.
+
+	private int[] left;         // Left child of each node.
+	private int[] right;        // Right child of each node.
+	private int[] parent;       // Parent of each node.
+	private int[] symbol;       // Symbol of each leaf.
+	private long[] weight;      // Frequency of each subtree.
+
+	private int[] leaf;         // Leaf node of each symbol, or NONE.
+	private long[] code;        // Code bits of each symbol.
+	private int[] length;       // Code length of each symbol.
+
+	private int[] heap;         // Min-heap of roots used by build().
+	private int heapSize = 0;
+
+	/*
+	 *   Constructor - the argument is the number of symbols.
+	 */
+
+	public HuffmanTree(int alphabetSize)
+	{
+		this.alphabetSize = alphabetSize;
+		int maxNodes = 2 * Math.max(alphabetSize, 2) - 1;
+
+		left = new int[maxNodes];
+		right = new int[maxNodes];
+		parent = new int[maxNodes];
+		symbol = new int[maxNodes];
+		weight = new long[maxNodes];
+
+		leaf = new int[alphabetSize];
+		code = new long[alphabetSize];
+		length = new int[alphabetSize];
+		heap = new int[Math.max(alphabetSize, 2)];
+		reset();
+	}
+
+	/*
+	 *   reset() - empty the tree so it can be built again.
+	 */
+
+	public void reset()
+	{
+		for (int s = 0; s < alphabetSize; s++) {
+			leaf[s] = NONE;
+			length[s] = 0;
+		}
+		nodeCount = 0;
+		heapSize = 0;
+		root = NONE;
+	}
+
+	/*
+	 *   addLeaf() - add a leaf node for symbol s and return it.
+	 */
+
+	public int addLeaf(int s, long w)
+	{
+		int n = nodeCount++;
+		left[n] = NONE;
+		right[n] = NONE;
+		parent[n] = NONE;
+		symbol[n] = s;
+		weight[n] = w;
+		leaf[s] = n;
+		root = n;
+		return n;
+	}
+
+	/*
+	 *   addNode() - add an internal node with children l and r
+	 *               and return it.
+	 */
+
+	public int addNode(int l, int r)
+	{
+		int n = nodeCount++;
+		left[n] = l;
+		right[n] = r;
+		parent[n] = NONE;
+		symbol[n] = 0;
+		weight[n] = weight[l] + weight[r];
+		parent[l] = n;
+		parent[r] = n;
+		root = n;
+		return n;
+	}
+
+	/*
+	 *   build() - build the code tree for the given frequencies.
+	 *
+	 *   A leaf is made for every symbol with a non-zero frequency,
+	 *   then the two roots of least weight are joined until one tree
+	 *   is left.  So that every symbol has a code of at least one bit
+	 *   the tree always has two or more leaves; missing leaves are
+	 *   made from unused symbols with weight 0.
+	 */
+
+	public void build(int[] freq)
+	{
+		reset();
+		for (int s = 0; s < alphabetSize; s++) {
+			if (freq[s] > 0)
+				addLeaf(s, freq[s]);
+		}
+		padLeaves();
+		combine();
+	}
+
+	public void build(long[] freq)
+	{
+		reset();
+		for (int s = 0; s < alphabetSize; s++) {
+			if (freq[s] > 0)
+				addLeaf(s, freq[s]);
+		}
+		padLeaves();
+		combine();
+	}
+
+	/*
+	 *   buildLimited() - build the tree and make the codes, as build()
+	 *                    and makeCodes() do, but with no code longer
+	 *                    than maxLength bits.  While a code is too
+	 *                    long the frequencies are flattened (halved,
+	 *                    keeping each used symbol above 0) and the tree
+	 *                    built again, as bzip2 does.  maxLength must
+	 *                    leave room for a code for every used symbol.
+	 */
+
+	public void buildLimited(long[] freq, int maxLength)
+	{
+		long[] w = freq.clone();
+
+		build(w);
+		makeCodes();
+		while (maxLength() > maxLength) {
+			for (int s = 0; s < alphabetSize; s++) {
+				if (w[s] > 0)
+					w[s] = 1 + w[s] / 2;
+			}
+			build(w);
+			makeCodes();
+		}
+	}
+
+	/*
+	 *   maxLength() - the length of the longest code.
+	 */
+
+	public int maxLength()
+	{
+		int max = 0;
+		for (int s = 0; s < alphabetSize; s++)
+			max = Math.max(max, length[s]);
+		return max;
+	}
+
+	/*
+	 *   padLeaves() - add leaves of weight 0 for unused symbols
+	 *                 until there are at least two leaves.
+	 */
+
+	public void padLeaves()
+	{
+		for (int s = 0; nodeCount < 2 && s < alphabetSize; s++) {
+			if (leaf[s] == NONE)
+				addLeaf(s, 0);
+		}
+	}
+
+	/*
+	 *   combine() - join the leaves added so far into one tree.
+	 */
+
+	public void combine()
+	{
+		heapSize = 0;
+		for (int n = 0; n < nodeCount; n++)
+			heapPush(n);
+
+		while (heapSize > 1) {
+			int l = heapPop();
+			int r = heapPop();
+			heapPush(addNode(l, r));
+		}
+		root = heapSize == 1 ? heap[0] : NONE;
+		heapSize = 0;
+	}
+
+	/*
+	 *   makeCodes() - fill in the code of each symbol by climbing
+	 *                 from its leaf to the root: a left child adds
+	 *                 a 0 bit and a right child a 1 bit.
+	 */
+
+	public void makeCodes()
+	{
+		for (int s = 0; s < alphabetSize; s++) {
+			int n = leaf[s];
+			long bits = 0;
+			int len = 0;
+
+			if (n != NONE) {
+				while (n != root) {
+					int p = parent[n];
+					if (right[p] == n)
+						bits |= 1L << len;
+					len++;
+					n = p;
+				}
+			}
+			if (len > 64)
+				throw new IllegalStateException("Code longer than 64 bits");
+			code[s] = bits;
+			length[s] = len;
+		}
+	}
+
+	/*
+	 *   write() - write the tree to a .huf file.  In pre-order, an
+	 *             internal node is a 1 bit and a leaf is a 0 bit
+	 *             followed by the 8 bits of its byte.
+	 */
+
+	public void write(BitWriter bitw)
+	{
+		rWrite(bitw, root);
+	}
+
+	private void rWrite(BitWriter bitw, int n)
+	{
+		if (left[n] == NONE) {
+			bitw.writeBit(0);
+			bitw.writeByte(symbol[n]);
+		}
+		else {
+			bitw.writeBit(1);
+			rWrite(bitw, left[n]);
+			rWrite(bitw, right[n]);
+		}
+	}
+
+	/*
+	 *   canonicalize() - replace the codes made by makeCodes() with
+	 *                    canonical codes of the same lengths.  Codes
+	 *                    of one length are consecutive numbers in
+	 *                    symbol order, and each length starts where
+	 *                    the codes of the shorter lengths left off.
+	 */
+
+	public void canonicalize()
+	{
+		int maxLen = maxLength();
+
+		long[] next = new long[maxLen + 2];    // Next code of each length.
+		int[] count = new int[maxLen + 2];     // Codes of each length.
+		for (int s = 0; s < alphabetSize; s++)
+			count[length[s]]++;
+		count[0] = 0;
+
+		long c = 0;
+		for (int len = 1; len <= maxLen; len++) {
+			c = (c + count[len - 1]) << 1;
+			next[len] = c;
+		}
+		for (int s = 0; s < alphabetSize; s++) {
+			if (length[s] > 0)
+				code[s] = next[length[s]]++;
+		}
+	}
+
+	/*
+	 *   writeLengths() - write the code lengths of the used symbols:
+	 *                    the number of them, then for each in symbol
+	 *                    order the gap from the last one (Elias gamma)
+	 *                    and its length in 6 bits.  Sparse symbols of
+	 *                    a large alphabet cost only a few bits each.
+	 */
+
+	public void writeLengths(BitWriter bitw)
+	{
+		int used = 0;
+		for (int s = 0; s < alphabetSize; s++) {
+			if (length[s] > 0)
+				used++;
+		}
+
+		bitw.writeGamma(used);
+		int last = -1;
+		for (int s = 0; s < alphabetSize; s++) {
+			if (length[s] > 0) {
+				bitw.writeGamma(s - last);
+				bitw.writeBits(length[s], 6);
+				last = s;
+			}
+		}
+	}
+
+	/*
+	 *   readLengths() - read the lengths written by writeLengths()
+	 *                   and rebuild the tree of canonical codes.
+	 */
+
+	public void readLengths(BitReader bitr)
+	{
+		reset();
+		long used = bitr.readGamma();
+		if (used < 2 || used > alphabetSize)
+			throw new IllegalStateException("Bad code length table");
+
+		int s = -1;
+		for (long i = 0; i < used; i++) {
+			long gap = bitr.readGamma();
+			s += (int) gap;
+			if (gap < 1 || s >= alphabetSize)
+				throw new IllegalStateException("Bad code length table");
+			length[s] = (int) bitr.readBits(6);
+		}
+		canonicalize();
+
+		root = newInternal();
+		for (s = 0; s < alphabetSize; s++) {
+			if (length[s] > 0)
+				insertCode(s);
+		}
+	}
+
+	/*
+	 *   insertCode() - add the leaf of symbol s, following its code
+	 *                  from the root and adding internal nodes on
+	 *                  the way as needed.
+	 */
+
+	private void insertCode(int s)
+	{
+		int n = root;
+		for (int i = length[s] - 1; i > 0; i--) {
+			boolean one = ((code[s] >>> i) & 1) != 0;
+			int child = one ? right[n] : left[n];
+			if (child == NONE) {
+				if (nodeCount == left.length)
+					throw new IllegalStateException("Bad code length table");
+				child = newInternal();
+				parent[child] = n;
+				if (one)
+					right[n] = child;
+				else
+					left[n] = child;
+			}
+			n = child;
+		}
+
+		if (nodeCount == left.length)
+			throw new IllegalStateException("Bad code length table");
+		int l = nodeCount++;
+		left[l] = NONE;
+		right[l] = NONE;
+		parent[l] = n;
+		symbol[l] = s;
+		weight[l] = 0;
+		leaf[s] = l;
+		if ((code[s] & 1) != 0)
+			right[n] = l;
+		else
+			left[n] = l;
+	}
+
+	/*
+	 *   newInternal() - add an internal node whose children are
+	 *                   filled in by insertCode().
+	 */
+
+	private int newInternal()
+	{
+		int n = nodeCount++;
+		left[n] = NONE;
+		right[n] = NONE;
+		parent[n] = NONE;
+		symbol[n] = 0;
+		weight[n] = 0;
+		return n;
+	}
+
+	/*
+	 *   treeBits() - the number of bits write() will write.
+	 */
+
+	public long treeBits()
+	{
+		long leaves = (nodeCount + 1) / 2;
+		return nodeCount + 8 * leaves;
+	}
+
+	/*
+	 *   read() - read a tree written by write().
+	 */
+
+	public void read(BitReader bitr)
+	{
+		reset();
+		root = rRead(bitr);
+	}
+
+	private int rRead(BitReader bitr)
+	{
+		int bit = bitr.readBit();
+
+		if (bit == 0)
+			return addLeaf(bitr.readByte() & 0xff, 0);
+		if (bit == -1 || nodeCount >= left.length - 2)
+			throw new IllegalStateException("Bad code tree");
+
+		int l = rRead(bitr);
+		int r = rRead(bitr);
+		return addNode(l, r);
+	}
+
+	public int root()
+	{
+		return root;
+	}
+
+	public int left(int n)
+	{
+		return left[n];
+	}
+
+	public int right(int n)
+	{
+		return right[n];
+	}
+
+	public int parent(int n)
+	{
+		return parent[n];
+	}
+
+	public boolean isLeaf(int n)
+	{
+		return left[n] == NONE;
+	}
+
+	public int symbol(int n)
+	{
+		return symbol[n];
+	}
+
+	public long weight(int n)
+	{
+		return weight[n];
+	}
+
+	public int leaf(int s)
+	{
+		return leaf[s];
+	}
+
+	public long code(int s)
+	{
+		return code[s];
+	}
+
+	public int length(int s)
+	{
+		return length[s];
+	}
+
+	public int alphabetSize()
+	{
+		return alphabetSize;
+	}
+
+	public int nodeCount()
+	{
+		return nodeCount;
+	}
+
+	/*
+	 *   print() - print the tree sideways to standard output,
+	 *             right subtree above left.
+	 */
+
+	public void print()
+	{
+		if (root != NONE)
+			rPrint(root, 0);
+	}
+
+	private void rPrint(int n, int level)
+	{
+		if (n == NONE)
+			return;
+
+		rPrint(right[n], level + 1);
+
+		for (int i = 0; i < level; i++)
+			System.out.print("         ");
+
+		if (left[n] == NONE && symbol[n] > 31 && symbol[n] < 127)
+			System.out.printf("%c-%d\n", (char) symbol[n], weight[n]);
+		else if (left[n] == NONE)
+			System.out.printf("%d-%d\n", symbol[n], weight[n]);
+		else
+			System.out.printf("%c-%d\n", '*', weight[n]);
+
+		rPrint(left[n], level + 1);
+	}
+
+	/*
+	 *   Heap of node numbers ordered by weight, then by node number
+	 *   so the tree built does not depend on the heap's history.
+	 */
+
+	private boolean less(int a, int b)
+	{
+		return weight[a] < weight[b] || (weight[a] == weight[b] && a < b);
+	}
+
+	private void heapPush(int n)
+	{
+		int i = heapSize++;
+		while (i > 0) {
+			int p = (i - 1) / 2;
+			if (!less(n, heap[p]))
+				break;
+			heap[i] = heap[p];
+			i = p;
+		}
+		heap[i] = n;
+	}
+
+	private int heapPop()
+	{
+		int top = heap[0];
+		int last = heap[--heapSize];
+		int i = 0;
+
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= heapSize)
+				break;
+			if (c + 1 < heapSize && less(heap[c + 1], heap[c]))
+				c++;
+			if (!less(heap[c], last))
+				break;
+			heap[i] = heap[c];
+			i = c;
+		}
+		if (heapSize > 0)
+			heap[i] = last;
+		return top;
+	}
+}
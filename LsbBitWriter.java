@@ -0,0 +1,127 @@
+/*
+ *    class LsbBitWriter
+ *
+ *    Writes bits to a stream least significant bit first, the order
+ *    of DEFLATE (RFC 1951): the first bit written is the low bit of
+ *    the first byte.  BitWriter packs bits the other way round, as
+ *    .huf files keep them.
+ *
+ *    Bits are gathered in a 64-bit word and written a byte at a time
+ *    once 32 or more are waiting.
+ */
+
+import java.io.*;
+
+public class LsbBitWriter
+{
+	private long word = 0;        // Bits waiting, first in the low bits.
+	private int count = 0;        // Number of bits waiting.
+	private long bits = 0;        // The number of bits written.
+	private String filename;      // Only used in error messages.
+	private OutputStream outF;
+
+	public LsbBitWriter(OutputStream out, String filename)
+	{
+		this.filename = filename;
+		outF = out;
+	}
+
+	/*
+	 *   writeBits() - write the low count bits of data (at most 32),
+	 *                 least significant first.
+	 */
+
+	public void writeBits(long data, int count)
+	{
+		word |= (data & ((1L << count) - 1)) << this.count;
+		this.count += count;
+		bits += count;
+		if (this.count >= 32)
+			drain(32);
+	}
+
+	/*
+	 *   writeCode() - write a Huffman code of length bits whose first
+	 *                 bit is its most significant, as DEFLATE stores
+	 *                 codes: the code is reversed, then written.
+	 */
+
+	public void writeCode(long code, int length)
+	{
+		writeBits(Long.reverse(code) >>> (64 - length), length);
+	}
+
+	/*
+	 *   alignToByte() - pad with 0 bits to the end of the byte.
+	 */
+
+	public void alignToByte()
+	{
+		if ((count & 7) != 0)
+			writeBits(0, 8 - (count & 7));
+	}
+
+	/*
+	 *   writeBytes() - write whole bytes, which must start on a byte
+	 *                  boundary.
+	 */
+
+	public void writeBytes(byte[] b, int off, int len)
+	{
+		drain(count);
+		try {
+			outF.write(b, off, len);
+		}
+		catch (IOException e) {
+			System.out.printf("Error writing byte to file: %s\n", filename);
+			System.exit(0);
+		}
+		bits += 8L * len;
+	}
+
+	/*
+	 *   getBitCount() - the number of bits written so far.
+	 */
+
+	public long getBitCount()
+	{
+		return bits;
+	}
+
+	/*
+	 *   close() - pad the last byte with 0 bits, write it and close
+	 *             the stream.
+	 */
+
+	public void close()
+	{
+		alignToByte();
+		drain(count);
+		try {
+			outF.close();
+		}
+		catch (IOException e) {
+			System.out.printf("Error closing file: %s\n", filename);
+			System.exit(0);
+		}
+	}
+
+	/*
+	 *   drain() - write out n waiting bits, a multiple of 8.
+	 */
+
+	private void drain(int n)
+	{
+		try {
+			for (; n >= 8; n -= 8) {
+				outF.write((int) word);
+				word >>>= 8;
+				count -= 8;
+			}
+		}
+		catch (IOException e) {
+			System.out.printf("Error writing byte to file: %s\n", filename);
+			System.exit(0);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *    class MTFTransform
+ *
+ *    Move-to-front coding.  Each byte is replaced by its position in
+ *    a list of the 256 byte values, and is then moved to the front
+ *    of the list.  Runs of a few distinct bytes (such as the output
+ *    of the Burrows-Wheeler transform) become runs of small values.
+ */
+
+public class MTFTransform implements Transform
+{
+	public static final int ID = 2;
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return 0;
+	}
+
+	public String name()
+	{
+		return "mtf";
+	}
+
+	/*
+	 *   forward() - replace each byte by its index in the list.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		byte[] list = initialList();
+		byte[] out = new byte[data.length];
+
+		for (int i = 0; i < data.length; i++) {
+			byte b = data[i];
+			int j = 0;
+			while (list[j] != b)      // Find the byte in the list.
+				j++;
+			out[i] = (byte) j;
+			System.arraycopy(list, 0, list, 1, j);   // Move to front.
+			list[0] = b;
+		}
+		return out;
+	}
+
+	/*
+	 *   inverse() - replace each index by the byte in the list.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		byte[] list = initialList();
+		byte[] out = new byte[data.length];
+
+		for (int i = 0; i < data.length; i++) {
+			int j = data[i] & 0xff;
+			byte b = list[j];
+			out[i] = b;
+			System.arraycopy(list, 0, list, 1, j);
+			list[0] = b;
+		}
+		return out;
+	}
+
+	private static byte[] initialList()
+	{
+		byte[] list = new byte[256];
+		for (int i = 0; i < 256; i++)
+			list[i] = (byte) i;
+		return list;
+	}
+}
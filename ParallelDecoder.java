@@ -0,0 +1,332 @@
+/*
+ *    class ParallelDecoder
+ *
+ *    Decodes a single segment .huf file, coded with one tree, on
+ *    several threads, though its codes are one serial bit stream.
+ *
+ *    The coded bits are cut into chunks and a task decodes each
+ *    chunk from its first bit, not knowing whether a code starts
+ *    there.  If it does not, the first few symbols come out wrong,
+ *    but Huffman codes resynchronise: a decoder started in the wrong
+ *    place soon finds itself at the start of a true code, and from
+ *    there on decodes exactly what a decoder started at the front of
+ *    the file would.  Each task keeps the bit position of the first
+ *    WINDOW symbols it decoded.
+ *
+ *    The chunks are then stitched together in order.  The first
+ *    chunk starts at a true code.  From the true end of each chunk
+ *    the next is decoded one symbol at a time until the position
+ *    reached is one where its task started a symbol; from that
+ *    symbol on, the task's output is the true output and is copied.
+ *    A chunk whose task never got in step within its window is
+ *    decoded whole, one symbol at a time, so the output is always
+ *    that of decoding the file from the front.
+ *
+ *    Symbols are decoded with a table of TABLE_BITS bits, which
+ *    gives the symbol and length of every code that short, and the
+ *    node to carry on from in the tree for longer ones.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+public class ParallelDecoder
+{
+	public static final int MIN_CHUNK_BITS = 1 << 20;   // Smallest chunk.
+
+	private static final int WINDOW = 1024;       // Symbol positions kept
+	                                              //    per chunk.
+	private static final int TABLE_BITS = 10;
+
+	private int threads;
+	private HufHeader header = new HufHeader();
+	private HuffmanTree tree = new HuffmanTree(256);
+	private int[] table = new int[1 << TABLE_BITS];   // Length << 8 | symbol,
+	                                                  //    or -1 - node.
+	private byte[] src;
+	private long endBit;         // End of the coded bits.
+	private long finish;         // End of the last true symbol, or -1
+	                             //    if not known.
+	private byte[] out;          // The decoded bytes.
+
+	/*
+	 *    Chunk - the symbols decoded from start, up to the first
+	 *            symbol starting at or after end.
+	 */
+
+	private static class Chunk
+	{
+		long start;
+		long end;
+		long stop;                       // Where the last symbol ended.
+		byte[] symbols = new byte[1024];
+		int count = 0;
+		long[] positions = new long[WINDOW];   // Start of the first
+		int kept = 0;                          //    symbols.
+		long[] ends = new long[8];       // End of the last 8 symbols,
+		                                 //    symbol i at i % 8.
+
+		Chunk(long start, long end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	public ParallelDecoder(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/*
+	 *   decode() - decode the .huf file in len bytes of src starting
+	 *              at off.  Returns the length of the decoded data,
+	 *              which is held in output(), or -1 if the file is
+	 *              not one ParallelDecoder can decode (several
+	 *              segments, or not coded with a single tree).
+	 */
+
+	public int decode(byte[] src, int off, int len) throws DataFormatException
+	{
+		if (len >= 4 && readInt(src, off + len - 4) == SegmentIndex.FOOTER_MAGIC)
+			return -1;
+
+		BitReader bitr = new BitReader(
+				new java.io.ByteArrayInputStream(src, off, len), "<parallel>");
+		try {
+			header.readFrom(bitr);
+			if (header.alphabet != null || header.hasTables() || header.hasTans()
+					|| header.hasPlanes())
+				return -1;
+			tree.read(bitr);
+		}
+		catch (RuntimeException e) {
+			throw new DataFormatException("Bad header or code tree: " + e.getMessage());
+		}
+		int count = header.symbolCount;
+		if (count < 0)
+			throw new DataFormatException("Bad symbol count: " + count);
+		if (tree.isLeaf(tree.root()))
+			return -1;
+		makeTable();
+
+		this.src = src;
+		long startBit = 8L * off + bitr.getBitCount();
+		endBit = 8L * (off + len);
+
+		// Cut the coded bits into chunks, a few for each thread so
+		// that threads finishing early can take more.
+
+		long bits = endBit - startBit;
+		int chunks = (int) Math.max(1, Math.min(threads * 4L, bits / MIN_CHUNK_BITS));
+		Chunk[] chunk = new Chunk[chunks];
+		for (int k = 0; k < chunks; k++)
+			chunk[k] = new Chunk(startBit + bits * k / chunks,
+					startBit + bits * (k + 1) / chunks);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new ChunkTask(chunk, 0, chunks));
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		out = new byte[count];
+		int n = stitch(chunk, startBit, count);
+		if (n < count)
+			throw new DataFormatException("Truncated: " + n + " of " + count + " symbols decoded");
+		// More than the padding of the last byte after the symbols is
+		// another segment, which sequential decoding must handle.
+		if (count > 0 && (finish < 0 || (finish + 7) / 8 * 8 < endBit))
+			return -1;
+
+		if (!header.transforms.isEmpty())
+			out = header.transforms.inverse(out);
+		if (header.hasChecksum()) {
+			CRC32C crc = new CRC32C();
+			crc.update(out, 0, out.length);
+			if ((int) crc.getValue() != header.checksum)
+				throw new DataFormatException("Checksum mismatch");
+		}
+		return out.length;
+	}
+
+	/*
+	 *   output() - the result of the last decode().
+	 */
+
+	public byte[] output()
+	{
+		return out;
+	}
+
+	/*
+	 *   ChunkTask - decode chunks start to end, splitting in two while
+	 *               there is more than one.
+	 */
+
+	private class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private transient Chunk[] chunk;
+		private int start;
+		private int end;
+
+		ChunkTask(Chunk[] chunk, int start, int end)
+		{
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute()
+		{
+			if (end - start > 1) {
+				int mid = start + (end - start) / 2;
+				invokeAll(new ChunkTask(chunk, start, mid), new ChunkTask(chunk, mid, end));
+			}
+			else if (end > start)
+				decodeChunk(chunk[start]);
+		}
+	}
+
+	/*
+	 *   decodeChunk() - decode from the chunk's first bit, guessing
+	 *                   that a code starts there.
+	 */
+
+	private void decodeChunk(Chunk c)
+	{
+		long pos = c.start;
+		byte[] symbols = c.symbols;
+		int n = 0;
+
+		while (pos < c.end) {
+			if (n < WINDOW)
+				c.positions[c.kept++] = pos;
+			int e = next(pos);
+			long to = pos + (e >>> 8);
+			if (to > endBit)
+				break;                 // Padding at the end of the file.
+			if (n == symbols.length)
+				symbols = Arrays.copyOf(symbols, n * 2);
+			c.ends[n & 7] = to;
+			symbols[n++] = (byte) e;
+			pos = to;
+		}
+		c.symbols = symbols;
+		c.count = n;
+		c.stop = pos;
+	}
+
+	/*
+	 *   stitch() - join the chunks into out, decoding one symbol at a
+	 *              time from the true end of each chunk until in step
+	 *              with the next.  Returns the number of symbols, and
+	 *              leaves where the last of them ends in finish.
+	 */
+
+	private int stitch(Chunk[] chunk, long pos, int count)
+	{
+		int n = 0;
+
+		finish = -1;
+		for (Chunk c : chunk) {
+			while (n < count && pos < c.end) {
+				int j = c.kept > 0 && pos <= c.positions[c.kept - 1]
+						? Arrays.binarySearch(c.positions, 0, c.kept, pos) : -1;
+				if (j >= 0) {              // In step: copy the rest.
+					int m = Math.min(c.count - j, count - n);
+					System.arraycopy(c.symbols, j, out, n, m);
+					n += m;
+					if (m > 0 && c.count - (j + m) < 8)
+						finish = c.ends[(j + m - 1) & 7];
+					pos = c.stop;
+					break;
+				}
+				int e = next(pos);
+				pos += e >>> 8;
+				if (pos > endBit)
+					return n;
+				out[n++] = (byte) e;
+				finish = pos;
+			}
+			if (n == count)
+				break;
+		}
+		return n;
+	}
+
+	/*
+	 *   next() - the symbol whose code starts at bit pos, and its
+	 *            length: length << 8 | symbol.
+	 */
+
+	private int next(long pos)
+	{
+		int e = table[peek(pos)];
+		if (e >= 0)
+			return e;
+
+		int node = -1 - e;         // Code longer than the table.
+		int length = TABLE_BITS;
+		do {
+			node = bit(pos + length++) == 0 ? tree.left(node) : tree.right(node);
+		} while (!tree.isLeaf(node));
+		return length << 8 | tree.symbol(node);
+	}
+
+	/*
+	 *   makeTable() - for each TABLE_BITS bit value, the symbol and
+	 *                 length of the code it starts with, or the node
+	 *                 reached if the code is longer.
+	 */
+
+	private void makeTable()
+	{
+		for (int v = 0; v < table.length; v++) {
+			int node = tree.root();
+			int length = 0;
+			while (!tree.isLeaf(node) && length < TABLE_BITS) {
+				int b = (v >>> (TABLE_BITS - 1 - length)) & 1;
+				node = b == 0 ? tree.left(node) : tree.right(node);
+				length++;
+			}
+			table[v] = tree.isLeaf(node) ? length << 8 | tree.symbol(node) : -1 - node;
+		}
+	}
+
+	/*
+	 *   peek() - the TABLE_BITS bits from bit pos, most significant
+	 *            first; bits past the end of the file are 0.
+	 */
+
+	private int peek(long pos)
+	{
+		int i = (int) (pos >>> 3);
+		int w;
+		if (i + 2 < src.length)
+			w = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+		else
+			w = byteAt(i) << 16 | byteAt(i + 1) << 8 | byteAt(i + 2);
+		return (w >>> (24 - TABLE_BITS - (int) (pos & 7))) & ((1 << TABLE_BITS) - 1);
+	}
+
+	private int bit(long pos)
+	{
+		return (byteAt((int) (pos >>> 3)) >>> (7 - (int) (pos & 7))) & 1;
+	}
+
+	private int byteAt(int i)
+	{
+		return i < src.length ? src[i] & 0xff : 0;
+	}
+
+	private static int readInt(byte[] b, int i)
+	{
+		return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | (b[i + 3] & 0xff);
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ *    class PhaseEvent
+ *
+ *    A JDK Flight Recorder event for one phase of an encode or
+ *    decode run (frequency pass, tree build, header, payload ...).
+ *    Recorded by CodecMetrics when a phase ends; costs next to
+ *    nothing unless a recording with the event enabled is running.
+ */
+
+import jdk.jfr.*;
+
+@Name("huffman.Phase")
+@Label("Huffman Phase")
+@Category("Huffman")
+@Description("One phase of a Huffman encode or decode run")
+public class PhaseEvent extends Event
+{
+	@Label("Operation")
+	public String operation;    // "encode" or "decode"
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;          // Bytes processed by the phase, if known.
+}
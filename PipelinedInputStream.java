@@ -0,0 +1,122 @@
+/*
+ *    class PipelinedInputStream
+ *
+ *    An input stream whose bytes are read ahead by a reader thread.
+ *    The reader thread fills chunks of a ChunkRing from the
+ *    underlying stream while the caller decodes or encodes the
+ *    chunks read before, so reading and coding overlap.
+ */
+
+import java.io.*;
+
+public class PipelinedInputStream extends InputStream
+{
+	private InputStream in;          // The underlying stream.
+	private ChunkRing ring;          // Chunks passed from the reader.
+	private Thread reader;           // The reader thread.
+	private volatile IOException error = null;   // Reader's failure.
+
+	private ChunkRing.Chunk cur = null;   // Chunk being consumed.
+	private int pos = 0;                  // Next byte of cur.
+	private boolean eof = false;
+
+	/*
+	 *   Constructor - read in from a new thread, through a ring of
+	 *                 chunks chunks of chunkSize bytes.
+	 */
+
+	public PipelinedInputStream(InputStream in, int chunks, int chunkSize)
+	{
+		this.in = in;
+		ring = new ChunkRing("read", chunks, chunkSize);
+		reader = new Thread(this::readLoop, "huffman-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/*
+	 *   readLoop() - the reader thread: fill chunks until end of file.
+	 */
+
+	private void readLoop()
+	{
+		try {
+			while (true) {
+				ChunkRing.Chunk c = ring.takeFree();
+				int n = 0;
+				try {
+					n = in.readNBytes(c.data, 0, c.data.length);
+				}
+				catch (IOException e) {
+					error = e;
+				}
+				if (n == 0 || error != null) {
+					c.length = ChunkRing.END;
+					ring.putFull(c);
+					return;
+				}
+				c.length = n;
+				ring.putFull(c);
+			}
+		}
+		catch (InterruptedException e) {
+			// closed while waiting; the consumer has gone
+		}
+	}
+
+	/*
+	 *   next() - move to the next chunk; false at end of file.
+	 */
+
+	private boolean next() throws IOException
+	{
+		if (eof)
+			return false;
+		if (cur != null)
+			ring.putFree(cur);
+		try {
+			cur = ring.takeFull();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		pos = 0;
+		if (cur.length == ChunkRing.END) {
+			eof = true;
+			if (error != null)
+				throw error;
+			return false;
+		}
+		return true;
+	}
+
+	public int read() throws IOException
+	{
+		if ((cur == null || pos == cur.length) && !next())
+			return -1;
+		return cur.data[pos++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		if ((cur == null || pos == cur.length) && !next())
+			return -1;
+		int n = Math.min(len, cur.length - pos);
+		System.arraycopy(cur.data, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	public ChunkRing.Stats stats()
+	{
+		return ring.stats();
+	}
+
+	public void close() throws IOException
+	{
+		reader.interrupt();
+		in.close();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ *    class PipelinedOutputStream
+ *
+ *    An output stream whose bytes are written by a writer thread.
+ *    The caller fills chunks of a ChunkRing and hands each full
+ *    chunk to the writer thread, which drains it to the underlying
+ *    stream while the caller goes on coding, so coding and writing
+ *    overlap.
+ */
+
+import java.io.*;
+
+public class PipelinedOutputStream extends OutputStream
+{
+	private OutputStream out;        // The underlying stream.
+	private ChunkRing ring;          // Chunks passed to the writer.
+	private Thread writer;           // The writer thread.
+	private volatile IOException error = null;   // Writer's failure.
+
+	private ChunkRing.Chunk cur;     // Chunk being filled.
+	private boolean closed = false;
+
+	/*
+	 *   Constructor - write to out from a new thread, through a ring
+	 *                 of chunks chunks of chunkSize bytes.
+	 */
+
+	public PipelinedOutputStream(OutputStream out, int chunks, int chunkSize)
+	{
+		this.out = out;
+		ring = new ChunkRing("write", chunks, chunkSize);
+		writer = new Thread(this::writeLoop, "huffman-writer");
+		writer.setDaemon(true);
+		writer.start();
+		cur = takeFree();
+	}
+
+	/*
+	 *   writeLoop() - the writer thread: drain chunks until the end
+	 *                 marker.  After an error, chunks are still taken
+	 *                 and given back so the caller is never stuck.
+	 */
+
+	private void writeLoop()
+	{
+		try {
+			while (true) {
+				ChunkRing.Chunk c = ring.takeFull();
+				if (c.length == ChunkRing.END)
+					return;
+				if (error == null) {
+					try {
+						out.write(c.data, 0, c.length);
+					}
+					catch (IOException e) {
+						error = e;
+					}
+				}
+				ring.putFree(c);
+			}
+		}
+		catch (InterruptedException e) {
+			// nothing more will be written
+		}
+	}
+
+	private ChunkRing.Chunk takeFree()
+	{
+		try {
+			return ring.takeFree();
+		}
+		catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 *   handOn() - pass the current chunk to the writer thread.
+	 */
+
+	private void handOn() throws IOException
+	{
+		if (error != null)
+			throw error;
+		try {
+			ring.putFull(cur);
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		cur = takeFree();
+	}
+
+	public void write(int b) throws IOException
+	{
+		if (cur.length == cur.data.length)
+			handOn();
+		cur.data[cur.length++] = (byte) b;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0) {
+			if (cur.length == cur.data.length)
+				handOn();
+			int n = Math.min(len, cur.data.length - cur.length);
+			System.arraycopy(b, off, cur.data, cur.length, n);
+			cur.length += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	public ChunkRing.Stats stats()
+	{
+		return ring.stats();
+	}
+
+	/*
+	 *   close() - hand on the last chunk, wait for the writer thread
+	 *             to finish and close the underlying stream.
+	 */
+
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (cur.length > 0) {
+				ring.putFull(cur);
+				cur = takeFree();
+			}
+			cur.length = ChunkRing.END;
+			ring.putFull(cur);
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		out.close();
+		if (error != null)
+			throw error;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ *    class RLETransform
+ *
+ *    Run-length coding.  A run of four equal bytes is written as is
+ *    and is followed by a count byte (0 to 255) of further copies of
+ *    the same byte.  Shorter runs are copied unchanged, so the
+ *    output is never much larger than the input.
+ */
+
+import java.io.*;
+
+public class RLETransform implements Transform
+{
+	public static final int ID = 3;
+
+	private static final int RUN = 4;   // Run length that triggers a count.
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return 0;
+	}
+
+	public String name()
+	{
+		return "rle";
+	}
+
+	/*
+	 *   forward() - collapse runs into RUN bytes plus a count.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 16);
+		int i = 0;
+
+		while (i < data.length) {
+			byte b = data[i];
+			int run = 1;
+			while (i + run < data.length && data[i + run] == b
+					&& run < RUN + 255)
+				run++;
+
+			if (run >= RUN) {
+				for (int j = 0; j < RUN; j++)
+					out.write(b);
+				out.write(run - RUN);
+			}
+			else {
+				for (int j = 0; j < run; j++)
+					out.write(b);
+			}
+			i += run;
+		}
+		return out.toByteArray();
+	}
+
+	/*
+	 *   inverse() - expand each count following RUN equal bytes.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2 + 16);
+		int i = 0;
+
+		while (i < data.length) {
+			byte b = data[i];
+			int run = 1;
+			while (i + run < data.length && data[i + run] == b && run < RUN)
+				run++;
+
+			for (int j = 0; j < run; j++)
+				out.write(b);
+			i += run;
+
+			if (run == RUN) {               // The next byte is a count.
+				int extra = data[i++] & 0xff;
+				for (int j = 0; j < extra; j++)
+					out.write(b);
+			}
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ *    class ReusableInputStream
+ *
+ *    An input stream over part of a byte array that can be pointed
+ *    at new bytes with reset(), so one stream (and the BitReader on
+ *    top of it) serves any number of inputs.
+ */
+
+import java.io.*;
+
+public class ReusableInputStream extends InputStream
+{
+	private byte[] buf = new byte[0];   // The bytes to read.
+	private int pos = 0;                // Next byte to read.
+	private int end = 0;                // End of the bytes to read.
+
+	/*
+	 *   reset() - read len bytes of b starting at off.
+	 */
+
+	public void reset(byte[] b, int off, int len)
+	{
+		buf = b;
+		pos = off;
+		end = off + len;
+	}
+
+	public int read()
+	{
+		if (pos == end)
+			return -1;
+		return buf[pos++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len)
+	{
+		if (pos == end)
+			return -1;
+		int n = Math.min(len, end - pos);
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	public int available()
+	{
+		return end - pos;
+	}
+
+	public void close()
+	{
+		// nothing to release
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *    class ReusableOutputStream
+ *
+ *    An output stream into a byte array that grows as needed and is
+ *    kept across reset(), so a stream used over and over stops
+ *    allocating once it has grown to the largest output.  Unlike
+ *    ByteArrayOutputStream it is not synchronized and hands out its
+ *    array rather than a copy.
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ReusableOutputStream extends OutputStream
+{
+	private byte[] buf;      // The bytes written.
+	private int count = 0;   // Number of bytes in buf.
+
+	public ReusableOutputStream(int size)
+	{
+		buf = new byte[Math.max(size, 16)];
+	}
+
+	public void write(int b)
+	{
+		if (count == buf.length)
+			grow(count + 1);
+		buf[count++] = (byte) b;
+	}
+
+	public void write(byte[] b, int off, int len)
+	{
+		if (count + len > buf.length)
+			grow(count + len);
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	/*
+	 *   ensureCapacity() - make room for size bytes in all.
+	 */
+
+	public void ensureCapacity(int size)
+	{
+		if (size > buf.length)
+			grow(size);
+	}
+
+	private void grow(int needed)
+	{
+		int size = Math.max(needed, buf.length * 2);
+		buf = Arrays.copyOf(buf, size);
+	}
+
+	/*
+	 *   reset() - forget the bytes written, keeping the array.
+	 */
+
+	public void reset()
+	{
+		count = 0;
+	}
+
+	/*
+	 *   truncate() - forget the bytes written after the first size.
+	 */
+
+	public void truncate(int size)
+	{
+		count = size;
+	}
+
+	/*
+	 *   buffer() - the array holding the bytes written.  Valid
+	 *              until the next write or reset().
+	 */
+
+	public byte[] buffer()
+	{
+		return buf;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public void close()
+	{
+		// nothing to release; the array is kept for reuse
+	}
+}
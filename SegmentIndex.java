@@ -0,0 +1,262 @@
+/*
+ *    class SegmentIndex
+ *
+ *    The index of the segments of a .huf file.
+ *
+ *    A .huf file may hold several segments one after another.  Each
+ *    is a complete .huf stream (header, tree and coded bits, padded
+ *    to a whole byte), so it has its own tree and length, and the
+ *    decoder simply decodes them in turn.  HEncode -a adds a segment
+ *    to the end of a file without touching the ones before it, and
+ *    HEncode -b writes a block of the input to each segment.
+ *
+ *    A file written by HEncode -a, or by -b in more than one block,
+ *    ends in a footer listing the segments:
+ *
+ *        32 bits  - FOOTER_MAGIC
+ *        32 bits  - number of segments
+ *        per segment:
+ *        64 bits  - offset of the segment in the file
+ *        64 bits  - length of the segment in bytes
+ *        32 bits  - length of the footer in bytes
+ *        32 bits  - FOOTER_MAGIC
+ *
+ *    The footer is found from the last 8 bytes of the file.  A file
+ *    without one is a single segment.
+ *
+ *    Appending writes the new segment over the old footer and a new
+ *    footer after it, so the index is kept in one place at the end.
+ *    First the bytes the append will overwrite, and the length of
+ *    the file, are saved to a journal, file.huf-journal, and synced;
+ *    the journal is removed once the new footer is on disk.  If the
+ *    append stops part way, the journal is left behind, and the
+ *    next program to open the file (recover()) puts the saved bytes
+ *    back, leaving the file as it was before the append.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class SegmentIndex
+{
+	public static final int FOOTER_MAGIC = 0x9E534547;   // 0x9E 'S' 'E' 'G'
+	public static final int JOURNAL_MAGIC = 0x9E4A4E4C;  // 0x9E 'J' 'N' 'L'
+
+	private long[] offsets = new long[4];   // Start of each segment.
+	private long[] lengths = new long[4];   // Bytes in each segment.
+	private int count = 0;                  // Number of segments.
+
+	/*
+	 *   read() - read the index of an open .huf file.  A file with no
+	 *            footer is one segment, or none if it is empty.
+	 */
+
+	public static SegmentIndex read(RandomAccessFile f) throws IOException
+	{
+		SegmentIndex index = new SegmentIndex();
+		long size = f.length();
+
+		if (readFooter(f, size, index))
+			return index;
+		if (size > 0)
+			index.add(0, size);
+		return index;
+	}
+
+	/*
+	 *   readFooter() - read into index the footer ending at end, if
+	 *                  a whole footer ends there whose segments lie
+	 *                  before it.
+	 */
+
+	private static boolean readFooter(RandomAccessFile f, long end, SegmentIndex index)
+			throws IOException
+	{
+		if (end < 16)
+			return false;
+		f.seek(end - 8);
+		int footerLength = f.readInt();
+		if (f.readInt() != FOOTER_MAGIC || footerLength < 16
+				|| footerLength > end || (footerLength - 16) % 16 != 0)
+			return false;
+
+		long start = end - footerLength;
+		int n = (footerLength - 16) / 16;
+		f.seek(start);
+		if (f.readInt() != FOOTER_MAGIC || f.readInt() != n)
+			return false;
+		for (int i = 0; i < n; i++) {
+			long offset = f.readLong();
+			long length = f.readLong();
+			if (offset < 0 || length < 0 || offset > start - length) {
+				index.count = 0;
+				return false;
+			}
+			index.add(offset, length);
+		}
+		return true;
+	}
+
+	/*
+	 *   journalName() - the name of the journal of an append to the
+	 *                   named .huf file.
+	 */
+
+	public static String journalName(String name)
+	{
+		return name + "-journal";
+	}
+
+	/*
+	 *   beginAppend() - save the bytes of the named file from dataEnd()
+	 *                   to its end (its footer, if it has one), and its
+	 *                   length, to the journal and sync it, before a
+	 *                   new segment is written over them.
+	 */
+
+	public void beginAppend(String name, RandomAccessFile f) throws IOException
+	{
+		long length = f.length();
+		byte[] saved = new byte[(int) (length - dataEnd())];
+		f.seek(dataEnd());
+		f.readFully(saved);
+
+		try (FileOutputStream file = new FileOutputStream(journalName(name))) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(JOURNAL_MAGIC);
+			out.writeLong(length);
+			out.writeInt(saved.length);
+			out.write(saved);
+			out.writeInt(JOURNAL_MAGIC);
+			out.flush();
+			file.getFD().sync();
+		}
+	}
+
+	/*
+	 *   endAppend() - remove the journal of the named file, once the
+	 *                 append is on disk, or before a new file of that
+	 *                 name is written.
+	 */
+
+	public static void endAppend(String name) throws IOException
+	{
+		Files.deleteIfExists(Paths.get(journalName(name)));
+	}
+
+	/*
+	 *   recover() - undo an append to the named file that did not
+	 *               finish, if its journal was left behind: the saved
+	 *               bytes go back where they were and the file is cut
+	 *               to its old length.  A journal that is cut short
+	 *               was still being written, before the file was
+	 *               touched, so is only removed.
+	 */
+
+	public static void recover(String name) throws IOException
+	{
+		Path journal = Paths.get(journalName(name));
+		if (!Files.exists(journal))
+			return;
+
+		try (DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(Files.readAllBytes(journal)))) {
+			if (in.readInt() == JOURNAL_MAGIC) {
+				long length = in.readLong();
+				int n = in.readInt();
+				if (n < 0 || n > in.available())
+					throw new EOFException();
+				byte[] saved = new byte[n];
+				in.readFully(saved);
+				if (in.readInt() == JOURNAL_MAGIC && length >= n) {
+					try (RandomAccessFile f = new RandomAccessFile(name, "rw")) {
+						f.seek(length - saved.length);
+						f.write(saved);
+						f.setLength(length);
+						f.getFD().sync();
+					}
+				}
+			}
+		}
+		catch (EOFException e) {
+			// cut short: the append had not begun
+		}
+		Files.delete(journal);
+	}
+
+	/*
+	 *   write() - write the footer after the last segment and cut
+	 *             the file off after it.
+	 */
+
+	public void write(RandomAccessFile f) throws IOException
+	{
+		byte[] footer = footer();
+		f.seek(dataEnd());
+		f.write(footer);
+		f.setLength(dataEnd() + footer.length);
+	}
+
+	/*
+	 *   footer() - the bytes of the footer, for a writer that puts
+	 *              it after the last segment itself.
+	 */
+
+	public byte[] footer() throws IOException
+	{
+		int footerLength = 16 + 16 * count;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(footerLength);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(FOOTER_MAGIC);
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeLong(offsets[i]);
+			out.writeLong(lengths[i]);
+		}
+		out.writeInt(footerLength);
+		out.writeInt(FOOTER_MAGIC);
+		return bytes.toByteArray();
+	}
+
+	/*
+	 *   add() - add a segment to the end of the index.
+	 */
+
+	public void add(long offset, long length)
+	{
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, count * 2);
+			lengths = Arrays.copyOf(lengths, count * 2);
+		}
+		offsets[count] = offset;
+		lengths[count] = length;
+		count++;
+	}
+
+	/*
+	 *   dataEnd() - the offset just past the last segment, where the
+	 *               next segment (or the footer) goes.
+	 */
+
+	public long dataEnd()
+	{
+		return count == 0 ? 0 : offsets[count - 1] + lengths[count - 1];
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public long offset(int i)
+	{
+		return offsets[i];
+	}
+
+	public long length(int i)
+	{
+		return lengths[i];
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ *    class ShortAlphabet
+ *
+ *    16-bit symbols: each pair of bytes, little endian, is one of
+ *    65536 symbols.  Suits UTF-16 text and other 16-bit data.  An
+ *    odd last byte is kept in the header.
+ */
+
+public class ShortAlphabet extends SymbolAlphabet
+{
+	private boolean hasTail = false;   // Input had an odd length.
+	private int tail = 0;              // The odd last byte.
+
+	public int mode()
+	{
+		return SHORT;
+	}
+
+	public int size()
+	{
+		return 1 << 16;
+	}
+
+	public int maxExpansion()
+	{
+		return 2;
+	}
+
+	public int[] parse(byte[] data)
+	{
+		int n = data.length / 2;
+		int[] symbols = new int[n];
+
+		for (int i = 0; i < n; i++)
+			symbols[i] = (data[2 * i] & 0xff) | (data[2 * i + 1] & 0xff) << 8;
+
+		hasTail = (data.length & 1) != 0;
+		tail = hasTail ? data[data.length - 1] & 0xff : 0;
+		return symbols;
+	}
+
+	public int expand(int s, byte[] dst, int pos)
+	{
+		dst[pos] = (byte) s;
+		dst[pos + 1] = (byte) (s >>> 8);
+		return pos + 2;
+	}
+
+	public int finish(byte[] dst, int pos)
+	{
+		if (hasTail)
+			dst[pos++] = (byte) tail;
+		return pos;
+	}
+
+	public void writeParams(BitWriter bitw)
+	{
+		bitw.writeBit(hasTail ? 1 : 0);
+		if (hasTail)
+			bitw.writeByte(tail);
+	}
+
+	public void readParams(BitReader bitr)
+	{
+		hasTail = bitr.readBit() == 1;
+		if (hasTail)
+			tail = bitr.readByte() & 0xff;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ *    class ShuffleTransform
+ *
+ *    Byte-plane shuffling of an array of elements of width bytes.
+ *    The first bytes of all the elements are gathered into plane 0,
+ *    the second bytes into plane 1, and so on, followed by any bytes
+ *    past the last whole element.  The high bytes of numbers, which
+ *    change little, then sit together apart from the noisy low
+ *    bytes; when the chain ends in a shuffle, the encoder codes each
+ *    plane with its own tree (HufHeader.FLAG_PLANES).
+ */
+
+public class ShuffleTransform implements Transform
+{
+	public static final int ID = 6;
+	public static final int DEFAULT_WIDTH = 4;
+
+	private int width;        // Bytes per element, and planes.
+
+	public ShuffleTransform(int width)
+	{
+		if (width < 1 || width > 255)
+			throw new IllegalArgumentException("shuffle width: " + width);
+		this.width = width;
+	}
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return width;
+	}
+
+	public String name()
+	{
+		return "shuffle";
+	}
+
+	/*
+	 *   forward() - gather the bytes of each plane.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		byte[] out = new byte[data.length];
+		int n = data.length / width;           // Whole elements.
+
+		for (int p = 0; p < width; p++) {
+			int base = p * n;
+			for (int i = 0; i < n; i++)
+				out[base + i] = data[i * width + p];
+		}
+		System.arraycopy(data, n * width, out, n * width, data.length - n * width);
+		return out;
+	}
+
+	/*
+	 *   inverse() - put the bytes of each plane back in their elements.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		byte[] out = new byte[data.length];
+		int n = data.length / width;
+
+		for (int p = 0; p < width; p++) {
+			int base = p * n;
+			for (int i = 0; i < n; i++)
+				out[i * width + p] = data[base + i];
+		}
+		System.arraycopy(data, n * width, out, n * width, data.length - n * width);
+		return out;
+	}
+
+	public int width()
+	{
+		return width;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ *    class Streams
+ *
+ *    Opens the files read and written by HEncode and HDecode.
+ *
+ *    The name "-" stands for standard input or standard output, so
+ *    the tools can be used in pipes.  Files are read and written
+ *    through their channels, and all streams get large buffers,
+ *    which keeps the number of system calls low on big files.
+ */
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class Streams
+{
+	public static final String STDIO = "-";         // Standard input or output.
+	public static final int BUFFER_SIZE = 1 << 20;  // Bytes buffered per stream.
+
+	/*
+	 *   isStdio() - true if the name stands for standard input or output.
+	 */
+
+	public static boolean isStdio(String name)
+	{
+		return name.equals(STDIO);
+	}
+
+	/*
+	 *   isNew() - true if nothing of the given name exists yet, so a
+	 *             program about to create it as its output may remove
+	 *             it again on failure.
+	 */
+
+	public static boolean isNew(String name)
+	{
+		return !isStdio(name) && Files.notExists(Paths.get(name), LinkOption.NOFOLLOW_LINKS);
+	}
+
+	/*
+	 *   removeCreated() - remove an output file a failed run created,
+	 *                     if it is still a regular file.  created is
+	 *                     what isNew() said before it was opened.
+	 */
+
+	public static void removeCreated(String name, boolean created)
+	{
+		Path path = Paths.get(name);
+		try {
+			if (created && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+				Files.delete(path);
+		}
+		catch (IOException e) {
+			// nothing more to do; the file is left behind
+		}
+	}
+
+	/*
+	 *   openInput() - open a file, or standard input, for reading.
+	 */
+
+	public static InputStream openInput(String name) throws IOException
+	{
+		InputStream in;
+
+		if (isStdio(name))           // May be a pipe, which has no
+			in = new FileInputStream(FileDescriptor.in);   //  file channel.
+		else {
+			try {
+				in = Channels.newInputStream(
+						FileChannel.open(Paths.get(name), StandardOpenOption.READ));
+			}
+			catch (NoSuchFileException e) {
+				throw new FileNotFoundException(name);
+			}
+		}
+		return new BufferedInputStream(in, BUFFER_SIZE);
+	}
+
+	/*
+	 *   openOutput() - create a file, or open standard output, for
+	 *                  writing.  The stream is not buffered; callers
+	 *                  buffer it (see buffered()) or hand it to a
+	 *                  writer thread that writes whole chunks.
+	 */
+
+	public static OutputStream openOutput(String name) throws IOException
+	{
+		if (isStdio(name))
+			return new FileOutputStream(FileDescriptor.out);
+
+		try {
+			return Channels.newOutputStream(FileChannel.open(Paths.get(name),
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING));
+		}
+		catch (NoSuchFileException | AccessDeniedException e) {
+			throw new FileNotFoundException(name);
+		}
+	}
+
+	/*
+	 *   buffered() - buffer an output stream.
+	 */
+
+	public static OutputStream buffered(OutputStream out)
+	{
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/*
+	 *   readAll() - read the whole of a file, or of standard input.
+	 */
+
+	public static byte[] readAll(String name) throws IOException
+	{
+		if (!isStdio(name))
+			return Files.readAllBytes(Paths.get(name));
+		try (InputStream in = openInput(name)) {
+			return in.readAllBytes();
+		}
+	}
+
+	/*
+	 *   decodedName() - the name of the file decoded from a .huf file:
+	 *                   the name without its .huf, plus .orig, so
+	 *                   a.txt.huf decodes to a.txt.orig.
+	 */
+
+	public static String decodedName(String hufName)
+	{
+		if (hufName.endsWith(".huf") && hufName.length() > 4)
+			hufName = hufName.substring(0, hufName.length() - 4);
+		return hufName + ".orig";
+	}
+
+	/*
+	 *   useStderrForMessages() - when the data goes to standard output,
+	 *                            send everything printed (errors, stats)
+	 *                            to standard error instead.
+	 */
+
+	public static void useStderrForMessages()
+	{
+		System.setOut(System.err);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ *    class SymbolAlphabet
+ *
+ *    An alphabet of symbols larger than a byte.  By default the
+ *    Huffman stage codes each byte as a symbol; an alphabet instead
+ *    cuts the input into larger symbols (16-bit units, or words
+ *    from a dictionary) so that fewer codes are written per input
+ *    byte.
+ *
+ *    parse() turns the input into symbols and settles whatever the
+ *    decoder needs to know (a dictionary, an odd last byte), which
+ *    writeParams() then stores in the .huf header.  The decoder
+ *    reads it back with read() and turns each symbol back into
+ *    bytes with expand().
+ */
+
+public abstract class SymbolAlphabet
+{
+	public static final int SHORT = 1;   // Mode id of ShortAlphabet.
+	public static final int WORD = 2;    // Mode id of WordAlphabet.
+
+	public abstract int mode();          // Id stored in the .huf header.
+	public abstract int size();          // Symbols are 0 .. size()-1.
+	public abstract int maxExpansion();  // Most bytes one symbol expands to.
+
+	/*
+	 *   parse() - return the symbols of the input.
+	 */
+
+	public abstract int[] parse(byte[] data);
+
+	/*
+	 *   expand() - write the bytes of symbol s to dst at pos and
+	 *              return the position after them.
+	 */
+
+	public abstract int expand(int s, byte[] dst, int pos);
+
+	/*
+	 *   finish() - write any bytes that follow the last symbol to
+	 *              dst at pos and return the position after them.
+	 */
+
+	public int finish(byte[] dst, int pos)
+	{
+		return pos;
+	}
+
+	public abstract void writeParams(BitWriter bitw);
+
+	public abstract void readParams(BitReader bitr);
+
+	/*
+	 *   create() - the alphabet named on the command line: "16" for
+	 *              16-bit symbols, "word" or "word:N" for a dictionary
+	 *              of up to N words, N at least 1.  Anything else
+	 *              throws an IllegalArgumentException.
+	 */
+
+	public static SymbolAlphabet create(String spec)
+	{
+		if (spec.equals("16"))
+			return new ShortAlphabet();
+		if (spec.equals("word"))
+			return new WordAlphabet(WordAlphabet.DEFAULT_WORDS);
+		if (spec.startsWith("word:")) {
+			int words = Integer.parseInt(spec.substring(5));
+			if (words < 1)
+				throw new IllegalArgumentException("Dictionary size: " + spec);
+			return new WordAlphabet(words);
+		}
+		throw new IllegalArgumentException("Unknown symbol alphabet: " + spec);
+	}
+
+	/*
+	 *   read() - read the mode and parameters of an alphabet from
+	 *            a .huf header.
+	 */
+
+	public static SymbolAlphabet read(BitReader bitr)
+	{
+		int mode = bitr.readByte() & 0xff;
+		SymbolAlphabet alphabet;
+
+		if (mode == SHORT)
+			alphabet = new ShortAlphabet();
+		else if (mode == WORD)
+			alphabet = new WordAlphabet(0);
+		else
+			throw new IllegalStateException("Unknown symbol alphabet: " + mode);
+
+		alphabet.readParams(bitr);
+		return alphabet;
+	}
+}
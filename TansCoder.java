@@ -0,0 +1,304 @@
+/*
+ *    class TansCoder
+ *
+ *    A table-based asymmetric numeral system (tANS) coder for bytes,
+ *    the coder of Zstandard's FSE, used in place of the Huffman tree
+ *    when the .huf header has FLAG_TANS.
+ *
+ *    The byte frequencies are scaled to counts that add up to the
+ *    table size 2^tableLog, each used byte getting at least 1.  Each
+ *    byte is given as many slots of the table as its count, spread
+ *    over the table.  The coder keeps a state, a slot of the table;
+ *    coding a byte of count c shifts out a few low bits of the state
+ *    (more for rare bytes) and moves to one of the byte's slots.  A
+ *    byte then costs close to log2(size / c) bits, fractions of a bit
+ *    included, where a Huffman code rounds it to whole bits.
+ *
+ *    The decoder runs the other way: the state's slot gives the byte
+ *    and how many bits to read for the next state.  As the encoder
+ *    must therefore work from the last byte back to the first, it
+ *    goes over the data twice: once to find the final state and the
+ *    state at the end of each block, then block by block from the
+ *    first, coding each again from its saved state and writing its
+ *    bits out in file order.  Only one block's bits are kept at once.
+ *
+ *    Written after the header:
+ *
+ *        gamma    - number of used bytes, plus 1
+ *        per used byte, in byte order:
+ *        gamma    - gap from the last used byte
+ *        gamma    - its count
+ *        tableLog bits - the first state of the decoder
+ *
+ *    followed by the bits of each byte in turn.
+ */
+
+public class TansCoder
+{
+	public static final int DEFAULT_TABLE_LOG = 11;   // 2048 slots.
+	public static final int MAX_TABLE_LOG = 15;
+	private static final int BLOCK = 1 << 16;   // Bytes encode() keeps bits for.
+
+	private int tableLog;
+	private int size;              // 2^tableLog.
+	private int[] count = new int[256];   // Scaled frequencies.
+
+	private byte[] symbol;         // Decoding: byte of each slot,
+	private int[] bits;            //    bits to read after it,
+	private int[] base;            //    and the next state less those bits.
+
+	private int[] slots;           // Encoding: the slots of each byte,
+	private int[] first;           //    in order, from first[b].
+
+	private int state;             // The decoder's state.
+
+	private TansCoder(int tableLog)
+	{
+		this.tableLog = tableLog;
+		this.size = 1 << tableLog;
+	}
+
+	/*
+	 *   build() - make a coder for the given byte frequencies.  The
+	 *             table is made larger than asked if need be to give
+	 *             every used byte a slot.
+	 */
+
+	public static TansCoder build(int[] freq, int tableLog)
+	{
+		long total = 0;
+		int used = 0;
+		for (int b = 0; b < 256; b++) {
+			total += freq[b];
+			if (freq[b] > 0)
+				used++;
+		}
+		while ((1 << tableLog) < used)
+			tableLog++;
+
+		TansCoder tc = new TansCoder(tableLog);
+		if (used > 0)
+			tc.normalize(freq, total);
+		tc.makeTables();
+		return tc;
+	}
+
+	/*
+	 *   normalize() - scale the frequencies to counts adding up to the
+	 *                 table size.  The rounding error is taken from or
+	 *                 given to the largest counts, where it costs least.
+	 */
+
+	private void normalize(int[] freq, long total)
+	{
+		int sum = 0;
+		for (int b = 0; b < 256; b++) {
+			if (freq[b] > 0) {
+				count[b] = (int) Math.max(1, Math.round((double) freq[b] * size / total));
+				sum += count[b];
+			}
+		}
+
+		while (sum != size) {
+			int big = 0;
+			for (int b = 1; b < 256; b++) {
+				if (count[b] > count[big])
+					big = b;
+			}
+			if (sum > size) {
+				// Take one from the largest count; every count is
+				// at least 1 and there are no more than size of them,
+				// so the largest is above 1 while sum > size.
+				count[big]--;
+				sum--;
+			}
+			else {
+				count[big]++;
+				sum++;
+			}
+		}
+	}
+
+	/*
+	 *   makeTables() - spread the bytes over the slots and work out
+	 *                  the decoding and encoding tables.
+	 */
+
+	private void makeTables()
+	{
+		int[] spread = new int[size];
+		int step = (size >> 1) + (size >> 3) + 3;   // Odd, so every slot
+		int pos = 0;                                //    is visited once.
+		for (int b = 0; b < 256; b++) {
+			for (int i = 0; i < count[b]; i++) {
+				spread[pos] = b;
+				pos = (pos + step) & (size - 1);
+			}
+		}
+
+		symbol = new byte[size];
+		bits = new int[size];
+		base = new int[size];
+		slots = new int[size];
+		first = new int[257];
+		for (int b = 0; b < 256; b++)
+			first[b + 1] = first[b] + count[b];
+
+		// The j-th slot of byte b stands for the value count[b] + j,
+		// which the state is shifted down to before b is coded.
+
+		int[] next = new int[256];
+		for (int u = 0; u < size; u++) {
+			int b = spread[u];
+			int x = count[b] + next[b];
+			slots[first[b] + next[b]] = u;
+			next[b]++;
+
+			int nb = tableLog - log2(x);
+			symbol[u] = (byte) b;
+			bits[u] = nb;
+			base[u] = (x << nb) - size;
+		}
+	}
+
+	private static int log2(int x)
+	{
+		return 31 - Integer.numberOfLeadingZeros(x);
+	}
+
+	/*
+	 *   write() - write the counts.
+	 */
+
+	public void write(BitWriter bitw)
+	{
+		int used = 0;
+		for (int b = 0; b < 256; b++) {
+			if (count[b] > 0)
+				used++;
+		}
+
+		bitw.writeGamma(used + 1);
+		int last = -1;
+		for (int b = 0; b < 256; b++) {
+			if (count[b] > 0) {
+				bitw.writeGamma(b - last);
+				bitw.writeGamma(count[b]);
+				last = b;
+			}
+		}
+	}
+
+	/*
+	 *   read() - read the counts written by write() and make the
+	 *            decoding tables.
+	 */
+
+	public static TansCoder read(BitReader bitr, int tableLog)
+	{
+		if (tableLog < 1 || tableLog > MAX_TABLE_LOG)
+			throw new IllegalStateException("Bad tANS table size");
+		TansCoder tc = new TansCoder(tableLog);
+
+		long used = bitr.readGamma() - 1;
+		if (used < 0 || used > 256)
+			throw new IllegalStateException("Bad tANS counts");
+		int b = -1;
+		long sum = 0;
+		for (long i = 0; i < used; i++) {
+			long gap = bitr.readGamma();
+			long c = bitr.readGamma();
+			b += (int) gap;
+			if (gap < 1 || b > 255 || c < 1 || c > tc.size)
+				throw new IllegalStateException("Bad tANS counts");
+			tc.count[b] = (int) c;
+			sum += c;
+		}
+		if (used > 0 && sum != tc.size)
+			throw new IllegalStateException("Bad tANS counts");
+		tc.makeTables();
+		return tc;
+	}
+
+	/*
+	 *   encode() - write len bytes of data: the final state, then the
+	 *              bits of each byte in file order.
+	 */
+
+	public void encode(BitWriter bitw, byte[] data, int len)
+	{
+		if (len == 0)
+			return;
+
+		int blocks = (len + BLOCK - 1) / BLOCK;
+		int[] states = new int[blocks];  // State at the end of each block.
+		int x = size;                    // State, size .. 2 * size - 1.
+		for (int k = blocks - 1; k >= 0; k--) {
+			states[k] = x;
+			x = code(data, k * BLOCK, Math.min(len, (k + 1) * BLOCK), x, null, null);
+		}
+		bitw.writeBits(x - size, tableLog);
+
+		int[] value = new int[Math.min(len, BLOCK)];     // Bits shifted out for
+		byte[] width = new byte[Math.min(len, BLOCK)];   //    each byte, and how many.
+		for (int k = 0; k < blocks; k++) {
+			int from = k * BLOCK;
+			int to = Math.min(len, from + BLOCK);
+			code(data, from, to, states[k], value, width);
+			for (int i = 0; i < to - from; i++)
+				bitw.writeBits(value[i], width[i]);
+		}
+	}
+
+	/*
+	 *   code() - code data[from .. to-1], last byte first, starting in
+	 *            state x, and return the state after data[from].  The
+	 *            bits shifted out for data[i] are kept in value and
+	 *            width at i - from, unless value is null.
+	 */
+
+	private int code(byte[] data, int from, int to, int x, int[] value, byte[] width)
+	{
+		for (int i = to - 1; i >= from; i--) {
+			int b = data[i] & 0xff;
+			int c = count[b];
+			int nb = log2(x) - log2(c);  // Shift x down into c .. 2c - 1.
+			if ((x >> nb) < c)
+				nb--;
+			if (value != null) {
+				value[i - from] = x & ((1 << nb) - 1);
+				width[i - from] = (byte) nb;
+			}
+			x = size + slots[first[b] + (x >> nb) - c];
+		}
+		return x;
+	}
+
+	/*
+	 *   start() - read the decoder's first state.
+	 */
+
+	public void start(BitReader bitr)
+	{
+		state = (int) bitr.readBits(tableLog);
+	}
+
+	/*
+	 *   next() - decode the next byte, or return -1 if the file ends.
+	 */
+
+	public int next(BitReader bitr)
+	{
+		if (state < 0)
+			return -1;
+		int u = state;
+		long low = bitr.readBits(bits[u]);
+		state = low < 0 ? -1 : base[u] + (int) low;
+		return symbol[u] & 0xff;
+	}
+
+	public int tableLog()
+	{
+		return tableLog;
+	}
+}
@@ -0,0 +1,21 @@
+/*
+ *   Transform
+ *
+ *   An interface for a reversible transform of a block of bytes.
+ *   Transforms are run over the input before the Huffman stage
+ *   (to make the byte frequencies more skewed) and undone after
+ *   the Huffman stage has decoded the file.
+ *
+ *   Each transform is identified in the .huf header by an id and
+ *   a one byte parameter, so the decoder can rebuild the chain.
+ */
+
+public interface Transform
+{
+	public int id();                      // Id stored in the .huf header.
+	public int param();                   // Parameter stored with the id.
+	public String name();                 // Short name used on the
+	                                      //     command line.
+	public byte[] forward(byte[] data);   // Apply the transform.
+	public byte[] inverse(byte[] data);   // Undo the transform.
+}
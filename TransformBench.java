@@ -0,0 +1,90 @@
+/*
+ *    class TransformBench - A program to time the transform stages.
+ *
+ *    Usage:  java TransformBench file [chain]
+ *
+ *    Each stage of the chain (default "bwt,mtf,rle") is run on the
+ *    output of the stage before it, forward and inverse, and checked
+ *    to round trip.  For every stage the program prints its output
+ *    size, the order-0 entropy of its output (the best a Huffman
+ *    stage could do with it) and its speed, so chains can be
+ *    compared for each kind of data.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class TransformBench {
+
+	private static final int RUNS = 5;   // Timed runs of each stage.
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: java TransformBench file [chain]");
+			System.exit(0);
+		}
+
+		byte[] data = Files.readAllBytes(Paths.get(args[0]));
+		TransformPipeline chain =
+				TransformPipeline.parse(args.length == 2 ? args[1] : "bwt,mtf,rle");
+
+		System.out.printf("%-8s %12s %10s %10s %10s\n",
+				"stage", "bytes", "bits/byte", "fwd MB/s", "inv MB/s");
+		System.out.printf("%-8s %12d %10.3f\n", "input", data.length, entropy(data));
+
+		for (int i = 0; i < chain.size(); i++) {
+			Transform t = chain.get(i);
+			byte[] out = null;
+			byte[] back = null;
+
+			long fwd = Long.MAX_VALUE;       // Best of RUNS, in nanoseconds.
+			long inv = Long.MAX_VALUE;
+			for (int r = 0; r < RUNS; r++) {
+				long start = System.nanoTime();
+				out = t.forward(data);
+				long mid = System.nanoTime();
+				back = t.inverse(out);
+				long end = System.nanoTime();
+				fwd = Math.min(fwd, mid - start);
+				inv = Math.min(inv, end - mid);
+			}
+
+			if (!Arrays.equals(data, back)) {
+				System.out.printf("%s does not round trip\n", t.name());
+				System.exit(1);
+			}
+
+			System.out.printf("%-8s %12d %10.3f %10.1f %10.1f\n", t.name(),
+					out.length, entropy(out), mbPerSec(data.length, fwd),
+					mbPerSec(out.length, inv));
+			data = out;
+		}
+	}
+
+	/*
+	 *   entropy() - order-0 entropy of the bytes in bits per byte.
+	 */
+
+	public static double entropy(byte[] data)
+	{
+		long[] count = new long[256];
+		for (byte b : data)
+			count[b & 0xff]++;
+
+		double bits = 0.0;
+		for (int i = 0; i < 256; i++) {
+			if (count[i] > 0) {
+				double p = (double) count[i] / data.length;
+				bits -= p * Math.log(p) / Math.log(2.0);
+			}
+		}
+		return bits;
+	}
+
+	private static double mbPerSec(long bytes, long nanos)
+	{
+		return nanos == 0 ? 0.0 : (bytes / 1e6) / (nanos / 1e9);
+	}
+}
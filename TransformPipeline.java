@@ -0,0 +1,190 @@
+/*
+ *    class TransformPipeline
+ *
+ *    A chain of reversible transforms run over the input before
+ *    the Huffman stage.  The encoder applies the transforms in
+ *    order; the decoder undoes them in reverse order.
+ *
+ *    The chain is stored in the .huf header as a count byte
+ *    followed by an id byte and a parameter byte for each stage.
+ *
+ *    Stages: bwt[:blockbits], mtf, rle, and for arrays of numbers
+ *    delta[:width], xor[:width] and shuffle[:width].
+ */
+
+import java.util.*;
+
+public class TransformPipeline
+{
+	public static final int DEFAULT_BWT_BITS = 20;  // 1 MiB BWT blocks.
+
+	private ArrayList<Transform> stages = new ArrayList<Transform>();
+
+	/*
+	 *   parse() - build a pipeline from a comma separated list of
+	 *             stage names such as "bwt,mtf,rle".  A stage may
+	 *             carry a parameter after a colon, as in "bwt:18".
+	 *             An unknown stage, a parameter out of range or a
+	 *             parameter on a stage that takes none throws an
+	 *             IllegalArgumentException.
+	 */
+
+	public static TransformPipeline parse(String spec)
+	{
+		TransformPipeline pipeline = new TransformPipeline();
+
+		for (String part : spec.split(",")) {
+			String name = part.trim();
+			int param = -1;          // -1 while no parameter is given.
+			int colon = name.indexOf(':');
+			if (colon >= 0) {
+				param = Integer.parseInt(name.substring(colon + 1));
+				if (param < 0)
+					throw new IllegalArgumentException("Negative parameter: " + part);
+				name = name.substring(0, colon);
+			}
+			if (name.length() == 0 && colon < 0)
+				continue;
+
+			if (name.equals("bwt"))
+				pipeline.add(new BWTransform(param < 0 ? DEFAULT_BWT_BITS : param));
+			else if (param >= 0 && (name.equals("mtf") || name.equals("rle")))
+				throw new IllegalArgumentException("No parameter for " + name + ": " + part);
+			else if (name.equals("mtf"))
+				pipeline.add(new MTFTransform());
+			else if (name.equals("rle"))
+				pipeline.add(new RLETransform());
+			else if (name.equals("delta"))
+				pipeline.add(new DeltaTransform(param < 0 ? DeltaTransform.DEFAULT_WIDTH : param));
+			else if (name.equals("xor"))
+				pipeline.add(new XorTransform(param < 0 ? XorTransform.DEFAULT_WIDTH : param));
+			else if (name.equals("shuffle"))
+				pipeline.add(new ShuffleTransform(param < 0 ? ShuffleTransform.DEFAULT_WIDTH : param));
+			else
+				throw new IllegalArgumentException("Unknown transform: " + name);
+		}
+		return pipeline;
+	}
+
+	/*
+	 *   create() - construct the transform stored in a header
+	 *              with the given id and parameter.
+	 */
+
+	public static Transform create(int id, int param)
+	{
+		switch (id) {
+		case BWTransform.ID:
+			return new BWTransform(param);
+		case MTFTransform.ID:
+			return new MTFTransform();
+		case RLETransform.ID:
+			return new RLETransform();
+		case DeltaTransform.ID:
+			return new DeltaTransform(param);
+		case XorTransform.ID:
+			return new XorTransform(param);
+		case ShuffleTransform.ID:
+			return new ShuffleTransform(param);
+		default:
+			throw new IllegalArgumentException("Unknown transform id: " + id);
+		}
+	}
+
+	public void add(Transform t)
+	{
+		stages.add(t);
+	}
+
+	public boolean isEmpty()
+	{
+		return stages.isEmpty();
+	}
+
+	public int size()
+	{
+		return stages.size();
+	}
+
+	public Transform get(int i)
+	{
+		return stages.get(i);
+	}
+
+	/*
+	 *   planes() - the number of byte planes of the output: the width
+	 *              of the last stage if it is a shuffle, otherwise 1.
+	 */
+
+	public int planes()
+	{
+		if (stages.isEmpty() || !(stages.get(stages.size() - 1) instanceof ShuffleTransform))
+			return 1;
+		return ((ShuffleTransform) stages.get(stages.size() - 1)).width();
+	}
+
+	/*
+	 *   forward() - run every stage over the data, first to last.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		for (Transform t : stages)
+			data = t.forward(data);
+		return data;
+	}
+
+	/*
+	 *   inverse() - undo every stage, last to first.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		for (int i = stages.size() - 1; i >= 0; i--)
+			data = stages.get(i).inverse(data);
+		return data;
+	}
+
+	/*
+	 *   write() - store the chain in the header of a .huf file.
+	 */
+
+	public void write(BitWriter bitw)
+	{
+		bitw.writeByte(stages.size());
+		for (Transform t : stages) {
+			bitw.writeByte(t.id());
+			bitw.writeByte(t.param());
+		}
+	}
+
+	/*
+	 *   read() - rebuild a chain stored by write().
+	 */
+
+	public static TransformPipeline read(BitReader bitr)
+	{
+		TransformPipeline pipeline = new TransformPipeline();
+		int n = bitr.readByte() & 0xff;
+
+		for (int i = 0; i < n; i++) {
+			int id = bitr.readByte() & 0xff;
+			int param = bitr.readByte() & 0xff;
+			pipeline.add(create(id, param));
+		}
+		return pipeline;
+	}
+
+	public String toString()
+	{
+		String str = "";
+		for (Transform t : stages) {
+			if (str.length() > 0)
+				str = str + ",";
+			str = str + t.name();
+			if (t.param() != 0)
+				str = str + ":" + t.param();
+		}
+		return str;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ *    class WordAlphabet
+ *
+ *    Symbols for the 256 byte values plus a dictionary of frequent
+ *    words.  A word is a run of 2 to 255 letters, digits, '_' or
+ *    bytes of 0x80 and up (so UTF-8 letters count).  A word in the
+ *    dictionary is coded as one symbol, 256 + its index; any other
+ *    byte is coded as itself.
+ *
+ *    parse() counts the words with a ByteSeqMap, keeps the words
+ *    that save the most bytes (count x (length - 1)), and stores
+ *    the dictionary in the header: its size in Elias gamma code
+ *    (plus one), then each word as a length byte and its bytes.
+ */
+
+import java.util.*;
+
+public class WordAlphabet extends SymbolAlphabet
+{
+	public static final int DEFAULT_WORDS = 4096;  // Dictionary size.
+
+	private static final int MIN_LEN = 2;     // Shortest word kept.
+	private static final int MAX_LEN = 255;   // Longest word.
+
+	private int maxWords;         // Largest dictionary to build.
+	private byte[] pool;          // The bytes of the words.
+	private int[] wordOff;        // Start of each word in pool.
+	private int[] wordLen;        // Length of each word.
+	private int words = 0;        // Number of words.
+
+	public WordAlphabet(int maxWords)
+	{
+		this.maxWords = maxWords;
+	}
+
+	public int mode()
+	{
+		return WORD;
+	}
+
+	public int size()
+	{
+		return 256 + words;
+	}
+
+	public int maxExpansion()
+	{
+		return MAX_LEN;
+	}
+
+	/*
+	 *   isWordByte() - true for the bytes words are made of.
+	 */
+
+	private static boolean isWordByte(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+		    || (b >= '0' && b <= '9') || b == '_' || b < 0;
+	}
+
+	/*
+	 *   wordEnd() - the end of the word starting at i.
+	 */
+
+	private static int wordEnd(byte[] data, int i)
+	{
+		int j = i;
+		while (j < data.length && j - i < MAX_LEN && isWordByte(data[j]))
+			j++;
+		return j;
+	}
+
+	public int[] parse(byte[] data)
+	{
+		ByteSeqMap map = new ByteSeqMap(data, 1 << 12);
+
+		// First pass - count the words.
+
+		for (int i = 0; i < data.length; ) {
+			if (!isWordByte(data[i])) {
+				i++;
+				continue;
+			}
+			int j = wordEnd(data, i);
+			if (j - i >= MIN_LEN)
+				map.increment(map.add(i, j - i));
+			i = j;
+		}
+
+		// Choose the dictionary: the words saving the most bytes.
+
+		int n = Math.min(map.size(), 1 << 24);
+		long[] keys = new long[n];
+		int candidates = 0;
+		for (int e = 0; e < n; e++) {
+			if (map.value(e) >= 2) {
+				long score = (long) map.value(e) * (map.length(e) - 1);
+				keys[candidates++] = (score << 24) | e;
+			}
+		}
+		Arrays.sort(keys, 0, candidates);
+
+		words = Math.min(maxWords, candidates);
+		wordOff = new int[words];
+		wordLen = new int[words];
+		int poolSize = 0;
+		for (int e = 0; e < map.size(); e++)
+			map.setValue(e, -1);
+		for (int w = 0; w < words; w++) {
+			int e = (int) (keys[candidates - 1 - w] & 0xffffff);
+			map.setValue(e, w);
+			wordOff[w] = poolSize;
+			wordLen[w] = map.length(e);
+			poolSize += map.length(e);
+		}
+		pool = new byte[poolSize];
+		for (int e = 0; e < map.size(); e++) {
+			int w = map.value(e);
+			if (w >= 0)
+				System.arraycopy(data, map.offset(e), pool, wordOff[w], wordLen[w]);
+		}
+
+		// Second pass - cut the input into symbols.
+
+		int[] symbols = new int[Math.max(16, data.length / 2)];
+		int count = 0;
+		for (int i = 0; i < data.length; ) {
+			if (count + MAX_LEN > symbols.length)
+				symbols = Arrays.copyOf(symbols, symbols.length * 2 + MAX_LEN);
+			if (!isWordByte(data[i])) {
+				symbols[count++] = data[i++] & 0xff;
+				continue;
+			}
+			int j = wordEnd(data, i);
+			int e = j - i >= MIN_LEN ? map.find(i, j - i) : -1;
+			if (e >= 0 && map.value(e) >= 0) {
+				symbols[count++] = 256 + map.value(e);
+			}
+			else {
+				for (int k = i; k < j; k++)
+					symbols[count++] = data[k] & 0xff;
+			}
+			i = j;
+		}
+		return Arrays.copyOf(symbols, count);
+	}
+
+	public int expand(int s, byte[] dst, int pos)
+	{
+		if (s < 256) {
+			dst[pos] = (byte) s;
+			return pos + 1;
+		}
+		int w = s - 256;
+		System.arraycopy(pool, wordOff[w], dst, pos, wordLen[w]);
+		return pos + wordLen[w];
+	}
+
+	public void writeParams(BitWriter bitw)
+	{
+		bitw.writeGamma(words + 1);
+		for (int w = 0; w < words; w++) {
+			bitw.writeByte(wordLen[w]);
+			for (int i = 0; i < wordLen[w]; i++)
+				bitw.writeByte(pool[wordOff[w] + i]);
+		}
+	}
+
+	public void readParams(BitReader bitr)
+	{
+		long n = bitr.readGamma() - 1;
+		if (n < 0 || n > (1 << 24))
+			throw new IllegalStateException("Bad word dictionary");
+
+		words = (int) n;
+		wordOff = new int[words];
+		wordLen = new int[words];
+		ReusableOutputStream bytes = new ReusableOutputStream(words * 8);
+		for (int w = 0; w < words; w++) {
+			wordOff[w] = bytes.size();
+			wordLen[w] = bitr.readByte() & 0xff;
+			for (int i = 0; i < wordLen[w]; i++)
+				bytes.write(bitr.readByte());
+		}
+		pool = Arrays.copyOf(bytes.buffer(), bytes.size());
+	}
+}
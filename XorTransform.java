@@ -0,0 +1,71 @@
+/*
+ *    class XorTransform
+ *
+ *    Each element of width bytes is replaced by its exclusive or with
+ *    the element before it.  Floating point values that change slowly
+ *    share their sign, exponent and high mantissa bits with their
+ *    neighbours, and these become zero bytes.  Bytes past the last
+ *    whole element are left as they are.
+ *
+ *    An element's xor is the xor of its bytes with the bytes width
+ *    places back, so the forward loop works on bytes and the JIT
+ *    compiler can vectorise it for any width.
+ */
+
+public class XorTransform implements Transform
+{
+	public static final int ID = 5;
+	public static final int DEFAULT_WIDTH = 4;
+
+	private int width;        // Bytes per element.
+
+	public XorTransform(int width)
+	{
+		if (width < 1 || width > 255)
+			throw new IllegalArgumentException("xor width: " + width);
+		this.width = width;
+	}
+
+	public int id()
+	{
+		return ID;
+	}
+
+	public int param()
+	{
+		return width;
+	}
+
+	public String name()
+	{
+		return "xor";
+	}
+
+	/*
+	 *   forward() - xor each element with the one before.
+	 */
+
+	public byte[] forward(byte[] data)
+	{
+		byte[] out = data.clone();
+		int end = data.length - data.length % width;
+
+		for (int i = width; i < end; i++)
+			out[i] = (byte) (data[i] ^ data[i - width]);
+		return out;
+	}
+
+	/*
+	 *   inverse() - undo the xors, first element to last.
+	 */
+
+	public byte[] inverse(byte[] data)
+	{
+		byte[] out = data.clone();
+		int end = data.length - data.length % width;
+
+		for (int i = width; i < end; i++)
+			out[i] = (byte) (out[i] ^ out[i - width]);
+		return out;
+	}
+}
@@ -0,0 +1,31 @@
+#!/bin/sh
+#
+#    build.sh - compile the programs into classes/.
+#
+#    The sources at the top level need JDK 11 or later:
+#
+#        javac -d classes *.java
+#
+#    offheap/ holds OffHeapCodec, which uses the Foreign Function &
+#    Memory API, a preview in JDK 21, so it is compiled on its own,
+#    on top of the other classes, with JDK 21:
+#
+#        javac --release 21 --enable-preview -cp classes -d classes offheap/*.java
+#
+#    and run with java --enable-preview -cp classes OffHeapCodec.
+#    It is compiled when javac, or $JAVA21_HOME/bin/javac if set, is
+#    JDK 21, and skipped otherwise.
+
+set -e
+cd "$(dirname "$0")"
+
+mkdir -p classes
+javac -d classes *.java
+
+javac21=${JAVA21_HOME:+$JAVA21_HOME/bin/}javac
+if "$javac21" -version 2>&1 | grep -q '^javac 21\b'; then
+	"$javac21" --release 21 --enable-preview -Xlint:-preview \
+		-cp classes -d classes offheap/*.java
+else
+	echo "build.sh: skipping offheap/, which needs JDK 21" >&2
+fi
@@ -0,0 +1,481 @@
+/*
+ *    class OffHeapCodec - A Huffman coder for files of any size, with
+ *                         its working state off the Java heap.
+ *
+ *    Usage:  java --enable-preview OffHeapCodec [-m] e file out.huf
+ *            java --enable-preview OffHeapCodec [-m] d file.huf out
+ *
+ *    Built on the Foreign Function & Memory API (java.lang.foreign),
+ *    a preview in JDK 21, so this file is kept apart from the other
+ *    sources and compiled on its own, on top of their classes (see
+ *    build.sh):
+ *
+ *        javac --release 21 --enable-preview -cp classes -d classes offheap/*.java
+ *
+ *    The input and output files are mapped whole as MemorySegments,
+ *    which (unlike a MappedByteBuffer) may be larger than 2 GiB, and
+ *    the histograms, code table and decoding tables are allocated in
+ *    an Arena, off the heap.  Bits are read and written with segment
+ *    accessors 32 at a time.  The heap holds only a code tree and a
+ *    header per segment, so the loops over the data allocate nothing
+ *    and a run needs a small, fixed heap whatever the file size.
+ *    -m prints the time taken and the garbage collections run.
+ *
+ *    The .huf files are those of HEncode and HDecode.  A file is
+ *    coded in segments of SEGMENT bytes (a segment's symbol count is
+ *    32 bits) followed by a SegmentIndex footer, and each segment
+ *    has its own tree and CRC32C.  Only files coded with a single
+ *    tree per segment can be decoded.
+ */
+
+import java.io.*;
+import java.lang.foreign.*;
+import java.lang.management.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+public class OffHeapCodec {
+
+	public static final long SEGMENT = 1L << 30;   // Bytes coded per segment.
+
+	private static final int MAX_CODE = 32;        // Longest code, in bits.
+	private static final int TABLE_BITS = 12;      // Bits decoded by table.
+	private static final long CRC_SLICE = 1L << 30;   // Bytes per checksum call.
+
+	private static final ValueLayout.OfInt INT_BE =
+			ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+	private static final ValueLayout.OfLong LONG_BE =
+			ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	public static void main(String[] args)
+	{
+		boolean stats = args.length == 4 && args[0].equals("-m");
+		int a = stats ? 1 : 0;
+		if (args.length != a + 3 || !(args[a].equals("e") || args[a].equals("d"))) {
+			System.out.println("Incorrect program argument");
+			System.exit(0);
+		}
+
+		long start = System.nanoTime();
+		long gcBefore = collections();
+		try (Arena arena = Arena.ofConfined()) {
+			if (args[a].equals("e"))
+				encode(arena, args[a + 1], args[a + 2]);
+			else
+				decode(arena, args[a + 1], args[a + 2]);
+		}
+		catch (NoSuchFileException e) {
+			System.out.printf("Error opening file %s\n", e.getFile());
+			System.exit(0);
+		}
+		catch (IOException e) {
+			System.out.printf("IOException: %s\n", e.getMessage());
+			System.exit(0);
+		}
+		catch (DataFormatException e) {
+			System.out.printf("%s is corrupt: %s\n", args[a + 1], e.getMessage());
+			System.exit(1);
+		}
+		if (stats)
+			System.out.printf("%.1f ms, %d garbage collections\n",
+					(System.nanoTime() - start) / 1e6, collections() - gcBefore);
+	}
+
+	/*
+	 *    encode() - code a file in segments of SEGMENT bytes.
+	 *
+	 *    A first pass counts the bytes of each segment and builds its
+	 *    tree, which gives the exact size of every segment, so the
+	 *    output file can be mapped at its full size and each segment
+	 *    coded straight into place by the second pass.
+	 */
+
+	public static void encode(Arena arena, String input, String output)
+			throws IOException
+	{
+		try (FileChannel inCh = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+		     FileChannel outCh = FileChannel.open(Paths.get(output), StandardOpenOption.READ,
+		    		 StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+		    		 StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = inCh.size();
+			MemorySegment in = inCh.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+			int segments = (int) Math.max(1, (size + SEGMENT - 1) / SEGMENT);
+
+			MemorySegment hist = arena.allocate(256 * 8L * segments, 8);
+			byte[][] headers = new byte[segments][];   // Header and tree
+			long[] headerBits = new long[segments];    //    of each segment.
+			SegmentIndex index = new SegmentIndex();
+			HuffmanTree tree = new HuffmanTree(256);
+			long[] freq = new long[256];
+			CRC32C crc = new CRC32C();
+
+			long offset = 0;
+			for (int s = 0; s < segments; s++) {
+				long from = s * SEGMENT;
+				long len = Math.min(SEGMENT, size - from);
+				MemorySegment h = hist.asSlice(256 * 8L * s, 256 * 8L);
+				count(in, from, len, h);
+				crc.reset();
+				update(crc, in, from, len);
+
+				for (int b = 0; b < 256; b++)
+					freq[b] = h.getAtIndex(ValueLayout.JAVA_LONG, b);
+				tree.buildLimited(freq, MAX_CODE);
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				BitWriter bitw = new BitWriter(bytes, output);
+				HufHeader header = new HufHeader();
+				header.setChecksum((int) crc.getValue());
+				header.symbolCount = (int) len;
+				header.write(bitw);
+				tree.write(bitw);
+				headerBits[s] = bitw.getBitCount();
+				bitw.close();
+				headers[s] = bytes.toByteArray();
+
+				long bits = headerBits[s];
+				for (int b = 0; b < 256; b++)
+					bits += freq[b] * tree.length(b);
+				index.add(offset, (bits + 7) / 8);
+				offset += (bits + 7) / 8;
+			}
+
+			byte[] footer = segments > 1 ? index.footer() : new byte[0];
+			MemorySegment out = outCh.map(FileChannel.MapMode.READ_WRITE, 0,
+					offset + footer.length, arena);
+			MemorySegment codes = arena.allocate(256 * 8L, 8);   // Code << 8 | length.
+
+			for (int s = 0; s < segments; s++) {
+				long from = s * SEGMENT;
+				long len = Math.min(SEGMENT, size - from);
+				MemorySegment h = hist.asSlice(256 * 8L * s, 256 * 8L);
+				for (int b = 0; b < 256; b++)
+					freq[b] = h.getAtIndex(ValueLayout.JAVA_LONG, b);
+				tree.buildLimited(freq, MAX_CODE);
+				for (int b = 0; b < 256; b++)
+					codes.setAtIndex(ValueLayout.JAVA_LONG, b,
+							tree.code(b) << 8 | tree.length(b));
+
+				MemorySegment dst = out.asSlice(index.offset(s), index.length(s));
+				MemorySegment.copy(headers[s], 0, dst, ValueLayout.JAVA_BYTE, 0,
+						headers[s].length);
+				writeCodes(in, from, len, codes, dst, headerBits[s]);
+			}
+			MemorySegment.copy(footer, 0, out, ValueLayout.JAVA_BYTE, offset, footer.length);
+			out.force();
+		}
+	}
+
+	/*
+	 *    count() - add up the bytes of len bytes of in from offset in
+	 *              the 256 counters of hist.
+	 */
+
+	private static void count(MemorySegment in, long from, long len, MemorySegment hist)
+	{
+		hist.fill((byte) 0);
+		for (long i = from; i < from + len; i++) {
+			long b = in.get(ValueLayout.JAVA_BYTE, i) & 0xff;
+			hist.setAtIndex(ValueLayout.JAVA_LONG, b,
+					hist.getAtIndex(ValueLayout.JAVA_LONG, b) + 1);
+		}
+	}
+
+	/*
+	 *    writeCodes() - write the codes of len bytes of in from offset
+	 *                   into dst, starting at bit start, most
+	 *                   significant bit first.  The bits are gathered
+	 *                   in a long and stored 32 at a time.
+	 */
+
+	private static void writeCodes(MemorySegment in, long from, long len,
+			MemorySegment codes, MemorySegment dst, long start)
+	{
+		long pos = start >>> 3;                 // Next byte to store.
+		int count = (int) (start & 7);          // Bits waiting,
+		long acc = count == 0 ? 0               //    low bits of acc.
+				: (dst.get(ValueLayout.JAVA_BYTE, pos) & 0xff) >>> (8 - count);
+		long limit = dst.byteSize() - 4;        // Last place for 32 bits.
+
+		for (long i = from; i < from + len; i++) {
+			long e = codes.getAtIndex(ValueLayout.JAVA_LONG,
+					in.get(ValueLayout.JAVA_BYTE, i) & 0xff);
+			int length = (int) (e & 0xff);
+			acc = acc << length | e >>> 8;
+			count += length;
+			if (count >= 32 && pos <= limit) {
+				count -= 32;
+				dst.set(INT_BE, pos, (int) (acc >>> count));
+				pos += 4;
+			}
+		}
+		for (; count >= 8; count -= 8)          // The rest, then the
+			dst.set(ValueLayout.JAVA_BYTE, pos++, (byte) (acc >>> (count - 8)));
+		if (count > 0)                          //    padded last byte.
+			dst.set(ValueLayout.JAVA_BYTE, pos, (byte) (acc << (8 - count)));
+	}
+
+	/*
+	 *    decode() - decode every segment of a .huf file into place in
+	 *               an output file mapped at the total decoded size.
+	 *
+	 *    The footer and every header are checked before the output
+	 *    file is opened; if a segment then turns out to be damaged,
+	 *    the output file is removed, if this run created it.
+	 */
+
+	public static void decode(Arena arena, String input, String output)
+			throws IOException, DataFormatException
+	{
+		SegmentIndex.recover(input);      // Undo an unfinished append.
+		try (FileChannel inCh = FileChannel.open(Paths.get(input), StandardOpenOption.READ)) {
+			long size = inCh.size();
+			MemorySegment in = inCh.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+			SegmentIndex index = segments(in);
+
+			// Read every header first for the size of the output.
+
+			int n = index.size();
+			long total = 0;
+			for (int s = 0; s < n; s++) {
+				HufHeader h = header(in.asSlice(index.offset(s), index.length(s)), input);
+				if (h.alphabet != null || h.hasTables() || h.hasTans() || h.hasPlanes()
+						|| !h.transforms.isEmpty())
+					throw new DataFormatException("not coded with one tree per segment");
+				if (h.symbolCount < 0)
+					throw new DataFormatException("bad symbol count");
+				total += h.symbolCount;
+			}
+
+			boolean created = Streams.isNew(output);
+			try (FileChannel outCh = FileChannel.open(Paths.get(output), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				MemorySegment out = outCh.map(FileChannel.MapMode.READ_WRITE, 0, total, arena);
+				decodeSegments(arena, in, index, out, input);
+				out.force();
+			}
+			catch (DataFormatException e) {
+				Streams.removeCreated(output, created);
+				throw e;
+			}
+		}
+	}
+
+	/*
+	 *    decodeSegments() - decode the segments of in, one after
+	 *                       another, into out.
+	 */
+
+	private static void decodeSegments(Arena arena, MemorySegment in, SegmentIndex index,
+			MemorySegment out, String input) throws DataFormatException
+	{
+		MemorySegment table = arena.allocate(4L << TABLE_BITS, 4);
+		MemorySegment nodes = arena.allocate(3 * 4L * 511, 4);
+		HuffmanTree tree = new HuffmanTree(256);
+		CRC32C crc = new CRC32C();
+
+		long at = 0;
+		for (int s = 0; s < index.size(); s++) {
+			MemorySegment src = in.asSlice(index.offset(s), index.length(s));
+			BitReader bitr = new BitReader(new SegmentInputStream(src), input);
+			HufHeader header = HufHeader.read(bitr);
+			try {
+				tree.read(bitr);
+			}
+			catch (RuntimeException e) {
+				throw new DataFormatException("bad code tree");
+			}
+			if (tree.isLeaf(tree.root()))
+				throw new DataFormatException("bad code tree");
+			makeTables(tree, table, nodes);
+
+			long len = header.symbolCount;
+			readCodes(src, bitr.getBitCount(), table, nodes, tree.root(), out, at, len);
+			if (header.hasChecksum()) {
+				crc.reset();
+				update(crc, out, at, len);
+				if ((int) crc.getValue() != header.checksum)
+					throw new DataFormatException("checksum mismatch");
+			}
+			at += len;
+		}
+	}
+
+	/*
+	 *    header() - the header at the start of a segment.
+	 */
+
+	private static HufHeader header(MemorySegment src, String input)
+			throws DataFormatException
+	{
+		try {
+			return HufHeader.read(new BitReader(new SegmentInputStream(src), input));
+		}
+		catch (RuntimeException e) {
+			throw new DataFormatException("bad header");
+		}
+	}
+
+	/*
+	 *    segments() - the segments of a mapped .huf file, from its
+	 *                 footer, or the whole file if it has none.  Every
+	 *                 segment in the footer must lie before it.
+	 */
+
+	private static SegmentIndex segments(MemorySegment in) throws DataFormatException
+	{
+		SegmentIndex index = new SegmentIndex();
+		long size = in.byteSize();
+
+		if (size >= 16 && in.get(INT_BE, size - 4) == SegmentIndex.FOOTER_MAGIC) {
+			int footerLength = in.get(INT_BE, size - 8);
+			long start = size - footerLength;
+			if (footerLength >= 16 && footerLength <= size && (footerLength - 16) % 16 == 0
+					&& in.get(INT_BE, start) == SegmentIndex.FOOTER_MAGIC
+					&& in.get(INT_BE, start + 4) == (footerLength - 16) / 16) {
+				for (long p = start + 8; p < size - 8; p += 16) {
+					long offset = in.get(LONG_BE, p);
+					long length = in.get(LONG_BE, p + 8);
+					if (offset < 0 || length < 0 || offset > start - length)
+						throw new DataFormatException("segment outside the file");
+					index.add(offset, length);
+				}
+				return index;
+			}
+		}
+		index.add(0, size);
+		return index;
+	}
+
+	/*
+	 *    makeTables() - fill the decoding tables of a tree.
+	 *
+	 *    table holds, for each TABLE_BITS bit value, the length << 8 |
+	 *    symbol of the code it starts with, or -1 - node for a longer
+	 *    code.  nodes holds three ints for each node: its children
+	 *    and its symbol, or -1 if it is not a leaf.
+	 */
+
+	private static void makeTables(HuffmanTree tree, MemorySegment table, MemorySegment nodes)
+	{
+		for (int n = 0; n < tree.nodeCount(); n++) {
+			boolean leaf = tree.isLeaf(n);
+			nodes.setAtIndex(ValueLayout.JAVA_INT, 3L * n, leaf ? 0 : tree.left(n));
+			nodes.setAtIndex(ValueLayout.JAVA_INT, 3L * n + 1, leaf ? 0 : tree.right(n));
+			nodes.setAtIndex(ValueLayout.JAVA_INT, 3L * n + 2, leaf ? tree.symbol(n) : -1);
+		}
+		for (int v = 0; v < 1 << TABLE_BITS; v++) {
+			int node = tree.root();
+			int length = 0;
+			while (!tree.isLeaf(node) && length < TABLE_BITS) {
+				int b = (v >>> (TABLE_BITS - 1 - length)) & 1;
+				node = b == 0 ? tree.left(node) : tree.right(node);
+				length++;
+			}
+			table.setAtIndex(ValueLayout.JAVA_INT, v,
+					tree.isLeaf(node) ? length << 8 | tree.symbol(node) : -1 - node);
+		}
+	}
+
+	/*
+	 *    readCodes() - decode len symbols from src, starting at bit
+	 *                  start, into out from offset at.
+	 */
+
+	private static void readCodes(MemorySegment src, long start, MemorySegment table,
+			MemorySegment nodes, int root, MemorySegment out, long at, long len)
+			throws DataFormatException
+	{
+		long pos = start;
+		long end = src.byteSize() * 8;
+		long safe = src.byteSize() - 4;         // Last place for 32 bits.
+
+		for (long i = 0; i < len; i++) {
+			long byteAt = pos >>> 3;
+			int w = byteAt <= safe ? src.get(INT_BE, byteAt) : tail(src, byteAt);
+			w <<= (int) (pos & 7);
+			int e = table.getAtIndex(ValueLayout.JAVA_INT, w >>> (32 - TABLE_BITS));
+			int length;
+			int symbol;
+			if (e >= 0) {
+				length = e >>> 8;
+				symbol = e & 0xff;
+			}
+			else {                              // Longer than the table.
+				int node = -1 - e;
+				length = TABLE_BITS;
+				do {
+					long p = pos + length++;
+					int bit = p < end ? (src.get(ValueLayout.JAVA_BYTE, p >>> 3)
+							>>> (7 - (int) (p & 7))) & 1 : 0;
+					node = nodes.getAtIndex(ValueLayout.JAVA_INT, 3L * node + bit);
+				} while (nodes.getAtIndex(ValueLayout.JAVA_INT, 3L * node + 2) < 0);
+				symbol = nodes.getAtIndex(ValueLayout.JAVA_INT, 3L * node + 2);
+			}
+			pos += length;
+			if (pos > end)
+				throw new DataFormatException("truncated: " + i + " of " + len
+						+ " symbols decoded");
+			out.set(ValueLayout.JAVA_BYTE, at + i, (byte) symbol);
+		}
+	}
+
+	/*
+	 *    tail() - 32 bits from byte i near the end of src, with 0 bits
+	 *             past the end.
+	 */
+
+	private static int tail(MemorySegment src, long i)
+	{
+		int w = 0;
+		for (int k = 0; k < 4; k++) {
+			long p = i + k;
+			w = w << 8 | (p < src.byteSize() ? src.get(ValueLayout.JAVA_BYTE, p) & 0xff : 0);
+		}
+		return w;
+	}
+
+	/*
+	 *    update() - add len bytes of seg from offset to a checksum, a
+	 *               slice at a time, as a ByteBuffer view is limited
+	 *               to 2 GiB.
+	 */
+
+	private static void update(CRC32C crc, MemorySegment seg, long from, long len)
+	{
+		for (long p = from; p < from + len; p += CRC_SLICE)
+			crc.update(seg.asSlice(p, Math.min(CRC_SLICE, from + len - p)).asByteBuffer());
+	}
+
+	private static long collections()
+	{
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+
+	/*
+	 *    SegmentInputStream - reads the bytes of a MemorySegment, for
+	 *                         the BitReader that reads a header.
+	 */
+
+	private static class SegmentInputStream extends InputStream
+	{
+		private MemorySegment seg;
+		private long pos = 0;
+
+		SegmentInputStream(MemorySegment seg)
+		{
+			this.seg = seg;
+		}
+
+		public int read()
+		{
+			return pos < seg.byteSize() ? seg.get(ValueLayout.JAVA_BYTE, pos++) & 0xff : -1;
+		}
+	}
+}